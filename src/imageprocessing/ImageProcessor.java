@@ -1,15 +1,28 @@
 package imageprocessing;
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
 
+import imageprocessing.controller.BatchScriptController;
+import imageprocessing.controller.HttpProcessingController;
+import imageprocessing.controller.PlannedScriptController;
+import imageprocessing.controller.ScriptDaemonController;
+import imageprocessing.controller.ScriptOptions;
 import imageprocessing.controller.SwingAppFeatures;
 import imageprocessing.controller.SwingController;
 import imageprocessing.controller.TextScriptedImageProcessingController;
+import imageprocessing.controller.WatchFolderController;
 import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.ConcurrentImageProcessingModel;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.view.ImageProcessingSwingView;
+import imageprocessing.view.SaveOptions;
 import imageprocessing.view.SwingView;
 import imageprocessing.view.TextScriptImageProcessingView;
 
@@ -18,11 +31,32 @@ import imageprocessing.view.TextScriptImageProcessingView;
  */
 public class ImageProcessor {
 
+  /**
+   * The port the script daemon listens on if none is given.
+   */
+  private static final int DAEMON_PORT = 47311;
+
+  /**
+   * The port the HTTP service listens on if none is given.
+   */
+  private static final int HTTP_PORT = 47312;
+
+  /**
+   * The least time between the progress lines of a command, with {@code -progress}.
+   */
+  private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+  /**
+   * The most memory the results of commands remembered by the Swing view should use, in bytes.
+   */
+  private static final long RESULT_CACHE_BYTES = 256L << 20;
 
   /**
    * Runs an Image processing controller, inputting and outputting to console, or reading from the
    * script given by command line args.
    *
+   * <p>The command line options are described in USEME.md.</p>
+   *
    * @param args the script to read from, if applicable
    * @throws IOException              if unable to transmit/read data
    * @throws IllegalArgumentException if unable to find script to read from
@@ -31,33 +65,236 @@ public class ImageProcessor {
     System.gc();
     Readable in = new InputStreamReader(System.in);
     if (args.length > 0 && args[0] != null) {
-      if (args.length == 2 && args[1] != null) {
-        try {
-          in = new FileReader(args[1]);
-        } catch (Exception e) {
-          throw new IllegalArgumentException("Cannot read from given filepath " + args[0] + ".");
-        }
+      if (args[0].equals("-batch") && args.length >= 4 && args[1] != null && args[2] != null
+          && args[3] != null) {
+        Map<String, String> options = ImageProcessor.parseOptions(args, 4,
+            "-workers", "-in-flight", "-thread-per-image", "-timeout");
+        int workers = ImageProcessor.intOption(options, "-workers",
+            Runtime.getRuntime().availableProcessors());
+        boolean threadPerImage = options.containsKey("-thread-per-image");
+        // without virtual threads, every image in flight would hold an ordinary thread
+        new BatchScriptController(ImageProcessor.openScript(args[1]), args[2], args[3],
+            System.out, workers, ImageProcessor.intOption(options, "-in-flight",
+                threadPerImage && BatchScriptController.hasVirtualThreads()
+                    ? Math.max(1024, workers) : 2 * workers),
+            threadPerImage, ImageProcessor.intOption(options, "-timeout", 0)).startProcessor();
+        return;
+      }
+      if (args[0].equals("-watch") && args.length >= 4 && args[1] != null && args[2] != null
+          && args[3] != null) {
+        Map<String, String> options = ImageProcessor.parseOptions(args, 4,
+            "-workers", "-in-flight");
+        int workers = ImageProcessor.intOption(options, "-workers",
+            Runtime.getRuntime().availableProcessors());
+        WatchFolderController controller = new WatchFolderController(
+            ImageProcessor.openScript(args[1]), args[2], args[3], System.out, workers,
+            ImageProcessor.intOption(options, "-in-flight", 2 * workers));
+        ImageProcessor.stopOnExit(controller::stop);
+        controller.startProcessor();
+        return;
       }
-      if ((args[0].equals("-file") && args.length == 2) || (args[0].equals("-text")
-          && args.length == 1)) {
-        BasicImageProcessingModel model = new BasicImageProcessingModel();
-        TextScriptImageProcessingView view =
-            new TextScriptImageProcessingView(System.out, model);
-        TextScriptedImageProcessingController controller =
-            new TextScriptedImageProcessingController(
-            model,
-            view,
-            in);
 
+      if (args[0].equals("-daemon")) {
+        Map<String, String> options = ImageProcessor.parseOptions(args, 1, "-port", "-workers");
+        ScriptDaemonController controller = new ScriptDaemonController(
+            ImageProcessor.intOption(options, "-port", DAEMON_PORT), System.out,
+            ImageProcessor.intOption(options, "-workers",
+                Runtime.getRuntime().availableProcessors()));
+        ImageProcessor.stopOnExit(controller::stop);
         controller.startProcessor();
+        return;
+      }
+      if (args[0].equals("-http")) {
+        Map<String, String> options = ImageProcessor.parseOptions(args, 1,
+            "-port", "-workers", "-queue", "-timeout");
+        int workers = ImageProcessor.intOption(options, "-workers",
+            Runtime.getRuntime().availableProcessors());
+        HttpProcessingController controller = new HttpProcessingController(
+            ImageProcessor.intOption(options, "-port", HTTP_PORT), System.out, workers,
+            ImageProcessor.intOption(options, "-queue", 4 * workers),
+            ImageProcessor.intOption(options, "-timeout", 30000));
+        ImageProcessor.stopOnExit(controller::stop);
+        controller.startProcessor();
+        return;
+      }
+      if (args[0].equals("-client") && args.length >= 2 && args[1] != null) {
+        Map<String, String> options = ImageProcessor.parseOptions(args, 2, "-port");
+        try (FileReader script = ImageProcessor.openScript(args[1])) {
+          ScriptDaemonController.sendScript(script,
+              ImageProcessor.intOption(options, "-port", DAEMON_PORT), System.out);
+        }
+        return;
+      }
+
+      int optionsStart;
+      if (args[0].equals("-file") && args.length >= 2 && args[1] != null) {
+        in = ImageProcessor.openScript(args[1]);
+        optionsStart = 2;
+      } else if (args[0].equals("-text")) {
+        optionsStart = 1;
       } else {
         throw new IllegalArgumentException("Invalid args.");
       }
+      Map<String, String> options = optionsStart == 2
+          ? ImageProcessor.parseOptions(args, optionsStart, "-save-threads", "-lookahead",
+              "-timeout", "-progress", "-memory-budget", "-decode-cache", "-workers", "-optimize")
+          : ImageProcessor.parseOptions(args, optionsStart, "-save-threads", "-lookahead",
+              "-timeout", "-progress", "-memory-budget", "-decode-cache");
+
+      if (options.containsKey("-workers") || options.containsKey("-optimize")) {
+        // the planned script runs its own saves and loads, and shares images between threads
+        for (String option : new String[] {"-save-threads", "-lookahead", "-progress",
+            "-memory-budget"}) {
+          if (options.containsKey(option)) {
+            throw new IllegalArgumentException(
+                "Option " + option + " cannot be used with -workers or -optimize.");
+          }
+        }
+        // commands on different images run on different threads
+        ConcurrentImageProcessingModel model = new ConcurrentImageProcessingModel();
+        model.shareDecodedImages(true);
+        if (options.containsKey("-decode-cache")) {
+          model.cacheDecodedImagesIn(new File(options.get("-decode-cache")));
+        }
+        int workers = ImageProcessor.intOption(options, "-workers", 1);
+        new PlannedScriptController(model, new TextScriptImageProcessingView(System.out, model,
+            ImageProcessor.saveOptions(workers)), in, workers,
+            options.containsKey("-optimize"), ImageProcessor.intOption(options, "-timeout", 0))
+            .startProcessor();
+        return;
+      }
+      BasicImageProcessingModel model = !options.containsKey("-memory-budget")
+          ? new BasicImageProcessingModel()
+          : new BasicImageProcessingModel(
+              (long) ImageProcessor.intOption(options, "-memory-budget", 0) << 20,
+              new File(System.getProperty("java.io.tmpdir")));
+      model.shareDecodedImages(true);
+      if (options.containsKey("-decode-cache")) {
+        model.cacheDecodedImagesIn(new File(options.get("-decode-cache")));
+      }
+      TextScriptImageProcessingView view = new TextScriptImageProcessingView(System.out, model,
+          ImageProcessor.saveOptions(ImageProcessor.intOption(options, "-save-threads", 0)));
+      TextScriptedImageProcessingController controller =
+          new TextScriptedImageProcessingController(
+          model,
+          view,
+          in,
+          new ScriptOptions(ImageProcessor.intOption(options, "-save-threads", 0),
+              ImageProcessor.intOption(options, "-lookahead", 0),
+              ImageProcessor.intOption(options, "-timeout", 0),
+              options.containsKey("-progress") ? PROGRESS_INTERVAL_MILLIS : 0));
+
+      controller.startProcessor();
     } else {
-      ImageProcessingModel model = new BasicImageProcessingModel();
+      // can be shared by the event thread and background threads, and remembers the results of
+      // commands, which users often run again on the same image
+      ConcurrentImageProcessingModel model = new ConcurrentImageProcessingModel(RESULT_CACHE_BYTES);
+      model.shareDecodedImages(true);
       ImageProcessingSwingView view = new SwingView(model);
-      SwingAppFeatures controller = new SwingController(model, view);
+      // commands run on a worker thread, so that the window keeps responding
+      SwingAppFeatures controller = new SwingController(model, view,
+          Executors.newSingleThreadExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "image-worker");
+            worker.setDaemon(true);
+            return worker;
+          }));
       view.setFeatures(controller);
     }
   }
+
+  /**
+   * Stops a long-running processor when the program is interrupted, and lets the work it has
+   * already taken finish before exiting.
+   *
+   * @param stop stops the processor, which then returns on this thread
+   */
+  private static void stopOnExit(Runnable stop) {
+    Thread main = Thread.currentThread();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      stop.run();
+      try {
+        main.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }));
+  }
+
+  /**
+   * Opens a script file.
+   *
+   * @param filepath the path of the script
+   * @return the script
+   * @throws IllegalArgumentException if unable to read the script
+   */
+  private static FileReader openScript(String filepath) throws IllegalArgumentException {
+    try {
+      return new FileReader(filepath);
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Cannot read from given filepath " + filepath + ".");
+    }
+  }
+
+  /**
+   * Reads the options at the end of the command line args. Each option starts with a dash and may
+   * be followed by a value.
+   *
+   * @param args    the command line args
+   * @param start   the index of the first option
+   * @param allowed the names of the options that can be given, including their dash
+   * @return the value of each option, or "true" for options without a value
+   * @throws IllegalArgumentException if an arg is not an option or its value, or an option is not
+   *                                  one of those allowed
+   */
+  private static Map<String, String> parseOptions(String[] args, int start, String... allowed)
+      throws IllegalArgumentException {
+    Map<String, String> options = new HashMap<>();
+    for (int i = start; i < args.length; i++) {
+      if (args[i] == null || !args[i].startsWith("-")) {
+        throw new IllegalArgumentException("Invalid args.");
+      }
+      if (!Arrays.asList(allowed).contains(args[i])) {
+        throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+      }
+      if (i + 1 < args.length && args[i + 1] != null && !args[i + 1].startsWith("-")) {
+        options.put(args[i], args[i + 1]);
+        i++;
+      } else {
+        options.put(args[i], "true");
+      }
+    }
+    return options;
+  }
+
+  /**
+   * Gets the integer value of an option.
+   *
+   * @param options      the options read from the command line
+   * @param name         the name of the option, including its dash
+   * @param defaultValue the value if the option was not given
+   * @return the value of the option
+   * @throws IllegalArgumentException if the option's value is not an integer
+   */
+  private static int intOption(Map<String, String> options, String name, int defaultValue)
+      throws IllegalArgumentException {
+    if (!options.containsKey(name)) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(options.get(name));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Option " + name + " must be an integer.");
+    }
+  }
+
+  /**
+   * Chooses how a script's images are saved: PNG files are compressed on every processor, unless
+   * several threads already run the script's work at once.
+   *
+   * @param threads the number of threads running the script's commands or saves
+   * @return the save options
+   */
+  private static SaveOptions saveOptions(int threads) {
+    return new SaveOptions(threads <= 1 && Runtime.getRuntime().availableProcessors() > 1);
+  }
 }
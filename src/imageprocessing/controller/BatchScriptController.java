@@ -0,0 +1,268 @@
+package imageprocessing.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import imageprocessing.view.SaveOptions;
+
+/**
+ * The {@code BatchScriptController} runs one script on every image in a directory. The script is
+ * read once, as a {@link ScriptPlan}, and run for each image on a pool of workers, each image with
+ * a model of its own. The script refers to the image through these parameters:
+ * <ul>
+ *   <li>{@code ${input}}: the path of the image</li>
+ *   <li>{@code ${output}}: the path of a file with the same name in the output directory</li>
+ *   <li>{@code ${name}}: the name of the image file without its suffix</li>
+ *   <li>{@code ${outputDir}}: the path of the output directory</li>
+ * </ul>
+ * One line is transmitted per image, followed by a summary of the throughput of the whole batch.
+ *
+ * <p>Images are either each run whole by one of the workers, or, for batches of many small images
+ * that mostly wait on files, each run on a thread of its own (a virtual thread where the Java
+ * runtime has them) with only their commands handed to the workers. The second way lets thousands
+ * of images be loading and saving at once while the commands never use more than the workers.</p>
+ */
+public class BatchScriptController implements ImageProcessingController {
+
+  private final ImageScriptRunner runner;
+  private final File inputDir;
+  private final File outputDir;
+  private final int workerThreads;
+  private final int maxInFlight;
+  private final boolean threadPerImage;
+
+  /**
+   * Instantiates this controller with the given script, directories, output, and limits.
+   *
+   * @param script        the script to run on every image
+   * @param inputDir      the directory of the images to process
+   * @param outputDir     the directory to save results to, created if it does not exist
+   * @param out           to transmit progress and the summary
+   * @param workerThreads the number of images processed at the same time
+   * @param maxInFlight   the most images loaded or waiting to be processed at once, which bounds
+   *                      the memory used; at least the number of workers
+   * @throws IllegalArgumentException if workerThreads is not positive or maxInFlight is less than
+   *                                  workerThreads
+   */
+  public BatchScriptController(
+      Readable script,
+      String inputDir,
+      String outputDir,
+      Appendable out,
+      int workerThreads,
+      int maxInFlight) throws IllegalArgumentException {
+    this(script, inputDir, outputDir, out, workerThreads, maxInFlight, false);
+  }
+
+  /**
+   * Instantiates this controller with the given script, directories, output, and limits, running
+   * each image on a thread of its own if asked to.
+   *
+   * @param script         the script to run on every image
+   * @param inputDir       the directory of the images to process
+   * @param outputDir      the directory to save results to, created if it does not exist
+   * @param out            to transmit progress and the summary
+   * @param workerThreads  the number of threads running images or, with a thread per image,
+   *                       running commands
+   * @param maxInFlight    the most images loaded or waiting to be processed at once, which bounds
+   *                       the memory used; at least the number of workers
+   * @param threadPerImage whether to run each image on a thread of its own, handing only its
+   *                       commands to the workers
+   * @throws IllegalArgumentException if workerThreads is not positive or maxInFlight is less than
+   *                                  workerThreads
+   */
+  public BatchScriptController(
+      Readable script,
+      String inputDir,
+      String outputDir,
+      Appendable out,
+      int workerThreads,
+      int maxInFlight,
+      boolean threadPerImage) throws IllegalArgumentException {
+    this(script, inputDir, outputDir, out, workerThreads, maxInFlight, threadPerImage, 0);
+  }
+
+  /**
+   * Instantiates this controller with the given script, directories, output, and limits, stopping
+   * commands that run longer than the given time. An image whose command was stopped is counted as
+   * failed, and the rest of its script still runs.
+   *
+   * @param script               the script to run on every image
+   * @param inputDir             the directory of the images to process
+   * @param outputDir            the directory to save results to, created if it does not exist
+   * @param out                  to transmit progress and the summary
+   * @param workerThreads        the number of threads running images or, with a thread per image,
+   *                             running commands
+   * @param maxInFlight          the most images loaded or waiting to be processed at once, which
+   *                             bounds the memory used; at least the number of workers
+   * @param threadPerImage       whether to run each image on a thread of its own, handing only its
+   *                             commands to the workers
+   * @param commandTimeoutMillis the time each command may run, in milliseconds, or 0 for no limit
+   * @throws IllegalArgumentException if workerThreads is not positive, maxInFlight is less than
+   *                                  workerThreads, or the timeout is negative
+   */
+  public BatchScriptController(
+      Readable script,
+      String inputDir,
+      String outputDir,
+      Appendable out,
+      int workerThreads,
+      int maxInFlight,
+      boolean threadPerImage,
+      long commandTimeoutMillis) throws IllegalArgumentException {
+    this.inputDir = new File(Objects.requireNonNull(inputDir));
+    this.outputDir = new File(Objects.requireNonNull(outputDir));
+    this.runner = new ImageScriptRunner(script, this.outputDir, out, commandTimeoutMillis);
+    if (workerThreads < 1) {
+      throw new IllegalArgumentException("Number of worker threads must be positive.");
+    }
+    if (maxInFlight < workerThreads) {
+      throw new IllegalArgumentException(
+          "Number of images in flight cannot be less than the number of workers.");
+    }
+    this.workerThreads = workerThreads;
+    this.maxInFlight = maxInFlight;
+    this.threadPerImage = threadPerImage;
+  }
+
+  /**
+   * Runs the script on every image in the input directory, transmitting a line per image and a
+   * summary at the end.
+   *
+   * @throws IOException              if unable to transmit output
+   * @throws IllegalArgumentException if the input directory does not exist, or the output
+   *                                  directory cannot be created
+   */
+  @Override
+  public void startProcessor() throws IOException, IllegalArgumentException {
+    if (!this.inputDir.isDirectory()) {
+      throw new IllegalArgumentException("Input directory " + this.inputDir + " does not exist.");
+    }
+    this.outputDir.mkdirs();
+    if (!this.outputDir.isDirectory()) {
+      throw new IllegalArgumentException(
+          "Unable to create output directory " + this.outputDir + ".");
+    }
+
+    List<File> inputs = this.listInputs();
+    this.runner.transmit("Processing " + inputs.size() + " images with "
+        + (this.threadPerImage ? "a thread per image and " : "") + this.workerThreads
+        + " workers.\n");
+
+    // with several workers, each image is encoded on its own thread
+    SaveOptions saveOptions = new SaveOptions(!this.threadPerImage && this.workerThreads == 1
+        && Runtime.getRuntime().availableProcessors() > 1);
+    ExecutorService workers = Executors.newFixedThreadPool(this.workerThreads);
+    ExecutorService imageThreads = this.threadPerImage
+        ? BatchScriptController.newThreadPerTaskExecutor() : workers;
+    Semaphore inFlight = new Semaphore(this.maxInFlight);
+    AtomicInteger failed = new AtomicInteger();
+    AtomicLong bytesRead = new AtomicLong();
+    long start = System.nanoTime();
+    List<Future<?>> tasks = new ArrayList<>();
+    try {
+      for (File input : inputs) {
+        inFlight.acquire();
+        tasks.add(imageThreads.submit(() -> {
+          try {
+            if (!this.runner.process(input, saveOptions, this.threadPerImage ? workers : null)) {
+              failed.incrementAndGet();
+            }
+            bytesRead.addAndGet(input.length());
+            return null;
+          } finally {
+            inFlight.release();
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing images.");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      imageThreads.shutdownNow();
+      workers.shutdownNow();
+    }
+
+    double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+    this.runner.transmit(String.format(Locale.ROOT,
+        "Processed %d images (%d failed) in %.2f s: %.2f images/s, %.2f MB/s read.\n",
+        inputs.size(), failed.get(), seconds, inputs.size() / seconds,
+        bytesRead.get() / seconds / (1 << 20)));
+  }
+
+  /**
+   * Gets whether the Java runtime has virtual threads, so that images run on a thread of their own
+   * each can be many more than the processors without each holding an ordinary thread.
+   *
+   * @return whether there are virtual threads
+   */
+  public static boolean hasVirtualThreads() {
+    ExecutorService virtualThreads = BatchScriptController.newVirtualThreadPerTaskExecutor();
+    if (virtualThreads == null) {
+      return false;
+    }
+    virtualThreads.shutdown();
+    return true;
+  }
+
+  /**
+   * Makes an executor starting a new thread for every task: a virtual thread on Java runtimes that
+   * have them, or an ordinary thread otherwise.
+   *
+   * @return the executor
+   */
+  private static ExecutorService newThreadPerTaskExecutor() {
+    ExecutorService virtualThreads = BatchScriptController.newVirtualThreadPerTaskExecutor();
+    return virtualThreads != null ? virtualThreads : Executors.newCachedThreadPool();
+  }
+
+  /**
+   * Makes an executor starting a new virtual thread for every task.
+   *
+   * @return the executor, or null if the Java runtime has no virtual threads
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      // looked up by name, so that this still compiles and runs on runtimes without them
+      Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtualThreads.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // missing, or a preview feature that is not enabled
+      return null;
+    }
+  }
+
+  /**
+   * Lists the images in the input directory, by name.
+   *
+   * @return the image files
+   */
+  private List<File> listInputs() {
+    File[] files = this.inputDir.listFiles();
+    List<File> inputs = new ArrayList<>();
+    for (File file : files == null ? new File[0] : files) {
+      if (file.isFile() && ImageScriptRunner.isImage(file)) {
+        inputs.add(file);
+      }
+    }
+    inputs.sort(null);
+    return inputs;
+  }
+}
@@ -0,0 +1,395 @@
+package imageprocessing.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.CommandMonitor;
+import imageprocessing.model.Commands.Command;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.view.TextScriptImageProcessingView;
+
+/**
+ * The {@code HttpProcessingController} serves image processing over HTTP to other programs on this
+ * machine. A request posts an image to {@code /process} and names the commands to run on it, and
+ * the response is the resulting image:
+ * <pre>
+ * POST /process?input=ppm&amp;output=png&amp;commands=blur;brighten+20;horizontal-flip
+ * </pre>
+ * {@code input} is the format of the posted image, {@code output} the format of the result (by
+ * default the input format), and {@code commands} the commands to run in order, separated by
+ * semicolons, each named as in a script and followed by its integer arguments.
+ *
+ * <p>At most the given number of requests are processed at once, and at most the given number
+ * more wait for a worker; further requests are answered with 503 at once. A request that takes
+ * longer than the timeout is answered with 504, and the command it is running stops at its next
+ * row, so that its worker is freed for the next request.
+ * Failed requests are answered with a status and a line of text saying why.</p>
+ */
+public class HttpProcessingController implements ImageProcessingController {
+
+  /**
+   * The largest image accepted, in bytes.
+   */
+  private static final int MAX_BODY_BYTES = 64 << 20;
+
+  private final HttpServer server;
+  private final Appendable log;
+  private final int workerThreads;
+  private final long timeoutMillis;
+  private final Semaphore admitted;
+  private final ExecutorService workers;
+  private final ExecutorService exchanges;
+  private final CountDownLatch stopped;
+
+  /**
+   * Instantiates this controller, listening on the given port of the loopback address.
+   *
+   * @param port          the port to listen on, or 0 for any free port
+   * @param log           to transmit a line per request
+   * @param workerThreads the number of requests processed at once
+   * @param queueLength   the number of requests that may wait for a worker
+   * @param timeoutMillis the longest a request is given before it is answered with 504
+   * @throws IOException              if unable to listen on the port
+   * @throws IllegalArgumentException if workerThreads or timeoutMillis is not positive, or
+   *                                  queueLength is negative
+   */
+  public HttpProcessingController(int port, Appendable log, int workerThreads, int queueLength,
+      long timeoutMillis) throws IOException, IllegalArgumentException {
+    if (workerThreads < 1) {
+      throw new IllegalArgumentException("Number of worker threads must be positive.");
+    }
+    if (queueLength < 0) {
+      throw new IllegalArgumentException("Queue length cannot be negative.");
+    }
+    if (timeoutMillis < 1) {
+      throw new IllegalArgumentException("Timeout must be positive.");
+    }
+    this.log = Objects.requireNonNull(log);
+    this.workerThreads = workerThreads;
+    this.timeoutMillis = timeoutMillis;
+    this.admitted = new Semaphore(workerThreads + queueLength);
+    this.workers = Executors.newFixedThreadPool(workerThreads);
+    // exchanges only wait on workers, or are turned away at once when too many are admitted
+    this.exchanges = Executors.newCachedThreadPool();
+    this.stopped = new CountDownLatch(1);
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(this.exchanges);
+  }
+
+  /**
+   * Gets the port this controller listens on.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Serves requests until {@link #stop()} is called.
+   *
+   * @throws IOException if unable to transmit to the log, or interrupted while serving
+   */
+  @Override
+  public void startProcessor() throws IOException {
+    this.server.start();
+    this.transmit("Serving http://" + this.server.getAddress().getAddress().getHostAddress() + ":"
+        + this.getPort() + "/process with " + this.workerThreads + " workers.\n");
+    try {
+      this.stopped.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while serving requests.");
+    } finally {
+      // give requests being answered a moment to finish
+      this.server.stop(1);
+      this.workers.shutdownNow();
+      this.exchanges.shutdownNow();
+    }
+    this.transmit("Stopped.\n");
+  }
+
+  /**
+   * Stops serving requests. Can be called from any thread.
+   */
+  public void stop() {
+    this.stopped.countDown();
+  }
+
+  /**
+   * Answers one request.
+   *
+   * @param exchange the request and its response
+   * @throws IOException if unable to read the request or send the response
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    int status;
+    try {
+      status = this.answer(exchange);
+    } finally {
+      exchange.close();
+    }
+    this.transmit(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " "
+        + status + " in " + (System.nanoTime() - start) / 1000000 + " ms.\n");
+  }
+
+  /**
+   * Answers one request, with the resulting image or a line saying why there is none.
+   *
+   * @param exchange the request and its response
+   * @return the status the request was answered with
+   * @throws IOException if unable to read the request or send the response
+   */
+  private int answer(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestURI().getPath().equals("/process")) {
+      return HttpProcessingController.sendText(exchange, 404, "Not found; post to /process.");
+    }
+    if (!exchange.getRequestMethod().equals("POST")) {
+      exchange.getResponseHeaders().set("Allow", "POST");
+      return HttpProcessingController.sendText(exchange, 405, "Only POST is allowed.");
+    }
+
+    Map<String, String> query =
+        HttpProcessingController.parseQuery(exchange.getRequestURI().getRawQuery());
+    String input = query.getOrDefault("input", "").toLowerCase(Locale.ROOT);
+    String output = query.getOrDefault("output", input).toLowerCase(Locale.ROOT);
+    List<Command> commands;
+    try {
+      if (!input.matches("[a-z]+") || !output.matches("[a-z]+")) {
+        throw new IllegalArgumentException("Give the input format, such as input=png.");
+      }
+      commands = HttpProcessingController.parseCommands(query.getOrDefault("commands", ""));
+    } catch (IllegalArgumentException e) {
+      return HttpProcessingController.sendText(exchange, 400, e.getMessage());
+    }
+
+    // admitted before reading the body, so that only admitted images are held in memory
+    if (!this.admitted.tryAcquire()) {
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      return HttpProcessingController.sendText(exchange, 503, "Too many requests; try again.");
+    }
+    // the deadline counts from admission, so a request waiting for a worker uses up its time
+    CommandMonitor monitor = new CommandMonitor(this.timeoutMillis);
+    // claimed by the task when it starts, or by this thread when the request times out first, and
+    // whichever claims it releases the admission once
+    AtomicBoolean claimed = new AtomicBoolean();
+    Future<byte[]> result;
+    try {
+      byte[] body = HttpProcessingController.readBody(exchange.getRequestBody());
+      if (body == null) {
+        this.admitted.release();
+        return HttpProcessingController.sendText(exchange, 413,
+            "Images can be at most " + MAX_BODY_BYTES + " bytes.");
+      }
+      result = this.workers.submit(() -> {
+        if (!claimed.compareAndSet(false, true)) {
+          throw new CancellationException("Timed out waiting for a worker.");
+        }
+        try {
+          return HttpProcessingController.process(body, input, output, commands, monitor);
+        } finally {
+          this.admitted.release();
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      this.admitted.release();
+      throw e;
+    }
+
+    byte[] image;
+    try {
+      image = result.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      monitor.cancel();
+      if (claimed.compareAndSet(false, true)) {
+        // never started, so its worker will not release the admission
+        this.admitted.release();
+      }
+      result.cancel(true);
+      return HttpProcessingController.sendText(exchange, 504,
+          "Processing took longer than " + this.timeoutMillis + " ms.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return HttpProcessingController.sendText(exchange, 503, "Shutting down.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CancellationException) {
+        return HttpProcessingController.sendText(exchange, 504,
+            "Processing took longer than " + this.timeoutMillis + " ms.");
+      }
+      if (e.getCause() instanceof IllegalArgumentException) {
+        return HttpProcessingController.sendText(exchange, 400, e.getCause().getMessage());
+      }
+      return HttpProcessingController.sendText(exchange, 500,
+          "Unable to process the image: " + e.getCause());
+    }
+
+    String contentType = URLConnection.guessContentTypeFromName("image." + output);
+    exchange.getResponseHeaders().set("Content-Type",
+        contentType == null ? "application/octet-stream" : contentType);
+    exchange.sendResponseHeaders(200, image.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(image);
+    }
+    return 200;
+  }
+
+  /**
+   * Runs commands on an encoded image, through a model of its own, and encodes the result.
+   *
+   * @param body     the encoded image
+   * @param input    the suffix of the image's format
+   * @param output   the suffix of the result's format
+   * @param commands the commands to run, in order
+   * @param monitor  follows the commands, stopping them once cancelled or past the deadline
+   * @return the encoded result
+   * @throws IllegalArgumentException if the image cannot be read or the result written in the given
+   *                                  formats
+   * @throws IOException              if unable to use temporary files
+   * @throws CancellationException    if the commands were stopped
+   */
+  private static byte[] process(byte[] body, String input, String output, List<Command> commands,
+      CommandMonitor monitor) throws IllegalArgumentException, IOException, CancellationException {
+    // the model and view read and write files, so the image passes through temporary ones
+    Path source = Files.createTempFile("imageprocessing-", "." + input);
+    Path result = Files.createTempFile("imageprocessing-", "." + output);
+    try {
+      Files.write(source, body);
+      ImageProcessingModel model = new BasicImageProcessingModel();
+      try {
+        model.loadImageFromFile(source.toString(), "image");
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unable to read the image as " + input + ".");
+      }
+      for (Command command : commands) {
+        model.doCommand(monitor.watch(command), "image", "image");
+      }
+      new TextScriptImageProcessingView(new StringBuilder(), model)
+          .saveImageToFile(model.image("image"), result.toString());
+      return Files.readAllBytes(result);
+    } finally {
+      Files.deleteIfExists(source);
+      Files.deleteIfExists(result);
+    }
+  }
+
+  /**
+   * Reads the commands of a request, such as {@code blur;brighten 20}.
+   *
+   * @param commands the commands, separated by semicolons, each with its integer arguments
+   * @return the commands, in order
+   * @throws IllegalArgumentException if a command is not identified or has the wrong arguments
+   */
+  private static List<Command> parseCommands(String commands) throws IllegalArgumentException {
+    List<Command> result = new ArrayList<>();
+    for (String command : commands.split(";")) {
+      String[] tokens = command.trim().split("\\s+");
+      if (tokens[0].isEmpty()) {
+        continue;
+      }
+      int[] ints = new int[tokens.length - 1];
+      for (int i = 1; i < tokens.length; i++) {
+        try {
+          ints[i - 1] = Integer.parseInt(tokens[i]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException(
+              "Arguments of " + tokens[0] + " must be integers, not " + tokens[i] + ".");
+        }
+      }
+      result.add(ScriptParser.command(tokens[0].toLowerCase(Locale.ROOT), ints));
+    }
+    return result;
+  }
+
+  /**
+   * Reads the parameters of a query string.
+   *
+   * @param rawQuery the query string, still encoded, or null
+   * @return the value of each parameter
+   */
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    for (String parameter : rawQuery == null ? new String[0] : rawQuery.split("&")) {
+      int equals = parameter.indexOf('=');
+      String name = equals < 0 ? parameter : parameter.substring(0, equals);
+      String value = equals < 0 ? "" : parameter.substring(equals + 1);
+      query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return query;
+  }
+
+  /**
+   * Reads the body of a request, up to the largest image accepted.
+   *
+   * @param in the body
+   * @return the bytes of the body, or null if it is too large
+   * @throws IOException if unable to read the body
+   */
+  private static byte[] readBody(InputStream in) throws IOException {
+    byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+    return body.length > MAX_BODY_BYTES ? null : body;
+  }
+
+  /**
+   * Answers a request with a line of text.
+   *
+   * @param exchange the request and its response
+   * @param status   the status to answer with
+   * @param message  the text to answer with
+   * @return the status
+   * @throws IOException if unable to send the response
+   */
+  private static int sendText(HttpExchange exchange, int status, String message)
+      throws IOException {
+    byte[] text = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, text.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(text);
+    }
+    return status;
+  }
+
+  /**
+   * Transmits a message to the log, from whichever request is done.
+   *
+   * @param message the message to transmit
+   * @throws IOException if unable to transmit the message
+   */
+  private void transmit(String message) throws IOException {
+    synchronized (this.log) {
+      this.log.append(message);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package imageprocessing.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import javax.imageio.ImageIO;
+
+import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.view.SaveOptions;
+import imageprocessing.view.TextScriptImageProcessingView;
+
+/**
+ * The {@code ImageScriptRunner} runs one script on single image files, each with a model of its
+ * own, binding the script's parameters to the file and transmitting a line about each. It is shared
+ * by the controllers that process whole directories of images.
+ */
+class ImageScriptRunner {
+
+  /**
+   * The suffixes of the image formats that can be loaded, looked up once rather than per file.
+   */
+  private static final Set<String> IMAGE_SUFFIXES = new HashSet<>(
+      Arrays.asList(ImageIO.getReaderFileSuffixes()));
+
+  static {
+    IMAGE_SUFFIXES.add("ppm");
+  }
+
+  private final ScriptPlan plan;
+  private final File outputDir;
+  private final Appendable out;
+
+  /**
+   * Instantiates this runner with the given script, output directory, and output.
+   *
+   * @param script               the script to run on every image
+   * @param outputDir            the directory results are saved to
+   * @param out                  to transmit a line per image
+   * @param commandTimeoutMillis the time each command may run, in milliseconds, or 0 for no limit
+   * @throws IllegalArgumentException if the timeout is negative
+   */
+  ImageScriptRunner(Readable script, File outputDir, Appendable out, long commandTimeoutMillis)
+      throws IllegalArgumentException {
+    this.plan = ScriptPlan.parse(Objects.requireNonNull(script)).quitAtEnd()
+        .withCommandTimeout(commandTimeoutMillis);
+    this.outputDir = Objects.requireNonNull(outputDir);
+    this.out = Objects.requireNonNull(out);
+  }
+
+  /**
+   * Runs the script on one image, with a model of its own, and transmits a line about it.
+   *
+   * @param input       the image file
+   * @param saveOptions how to save images
+   * @param commands    the executor to run the script's commands on, or null to run them on the
+   *                    calling thread
+   * @return whether every command of the script succeeded
+   * @throws IOException if unable to transmit output
+   */
+  boolean process(File input, SaveOptions saveOptions, ExecutorService commands)
+      throws IOException {
+    String fileName = input.getName();
+    int dot = fileName.lastIndexOf('.');
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("input", input.getPath());
+    parameters.put("output", new File(this.outputDir, fileName).getPath());
+    parameters.put("name", dot < 0 ? fileName : fileName.substring(0, dot));
+    parameters.put("outputDir", this.outputDir.getPath());
+
+    ImageProcessingModel model = new BasicImageProcessingModel();
+    TextScriptImageProcessingView view =
+        new TextScriptImageProcessingView(new StringBuilder(), model, saveOptions);
+    long start = System.nanoTime();
+    List<String> failures;
+    try {
+      ScriptPlan bound = this.plan.bind(parameters);
+      failures = commands == null ? bound.run(model, view)
+          : bound.runCommandsOn(model, view, commands);
+    } catch (IOException | IllegalArgumentException e) {
+      this.transmit("Failed " + input.getPath() + ": " + e.getMessage() + "\n");
+      return false;
+    }
+
+    long millis = (System.nanoTime() - start) / 1000000;
+    if (failures.isEmpty()) {
+      this.transmit("Processed " + input.getPath() + " in " + millis + " ms.\n");
+      return true;
+    }
+    this.transmit("Failed " + input.getPath() + " in " + millis + " ms: "
+        + String.join("; ", failures) + "\n");
+    return false;
+  }
+
+  /**
+   * Transmits a message, from whichever thread is done.
+   *
+   * @param message the message to transmit
+   * @throws IOException if unable to transmit the message
+   */
+  void transmit(String message) throws IOException {
+    synchronized (this.out) {
+      this.out.append(message);
+    }
+  }
+
+  /**
+   * Checks whether a file has the suffix of an image format that can be loaded.
+   *
+   * @param file the file
+   * @return whether the file's suffix is one of an image format
+   */
+  static boolean isImage(File file) {
+    String name = file.getName();
+    String suffix = name.substring(name.lastIndexOf('.') + 1);
+    return IMAGE_SUFFIXES.contains(suffix.toLowerCase(Locale.ROOT));
+  }
+}
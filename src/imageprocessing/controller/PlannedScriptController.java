@@ -0,0 +1,129 @@
+package imageprocessing.controller;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.view.TextScriptImageProcessingView;
+
+/**
+ * The {@code PlannedScriptController} runs a text script like
+ * {@link TextScriptedImageProcessingController}, but reads the whole script first and runs it as a
+ * {@link ScriptPlan} on a pool of worker threads, so that commands on unrelated images run at the
+ * same time. It renders the same messages, in the same order, and leaves the same images and files
+ * behind. Since the whole script is read before anything runs, it is meant for script files rather
+ * than commands typed into the console.
+ */
+public class PlannedScriptController implements ImageProcessingController {
+
+  private final ImageProcessingModel model;
+  private final TextScriptImageProcessingView view;
+  private final Readable script;
+  private final int workerThreads;
+  private final boolean skipUnusedResults;
+  private final long commandTimeoutMillis;
+
+  /**
+   * Instantiates this controller with the given model, view, script, and number of workers.
+   *
+   * @param model         to run the script on, which must allow different images to be used from
+   *                      different threads
+   * @param view          to transmit output and save images
+   * @param script        the script to run
+   * @param workerThreads the number of threads running commands
+   * @throws IllegalArgumentException if workerThreads is not positive
+   */
+  public PlannedScriptController(
+      ImageProcessingModel model,
+      TextScriptImageProcessingView view,
+      Readable script,
+      int workerThreads) throws IllegalArgumentException {
+    this(model, view, script, workerThreads, false);
+  }
+
+  /**
+   * Instantiates this controller with the given model, view, script, and number of workers,
+   * optionally skipping the commands whose results are never used by a later command or save.
+   * Only the images the script saves are then guaranteed to be computed.
+   *
+   * @param model             to run the script on, which must allow different images to be used
+   *                          from different threads
+   * @param view              to transmit output and save images
+   * @param script            the script to run
+   * @param workerThreads     the number of threads running commands, 1 to run them in order
+   * @param skipUnusedResults whether to skip loads and commands whose results are never used
+   * @throws IllegalArgumentException if workerThreads is not positive
+   */
+  public PlannedScriptController(
+      ImageProcessingModel model,
+      TextScriptImageProcessingView view,
+      Readable script,
+      int workerThreads,
+      boolean skipUnusedResults) throws IllegalArgumentException {
+    this(model, view, script, workerThreads, skipUnusedResults, 0);
+  }
+
+  /**
+   * Instantiates this controller with the given model, view, script, and number of workers,
+   * optionally skipping unused results, and stopping commands that run longer than the given time.
+   * A stopped command fails like a command given a missing image, and the script moves on.
+   *
+   * @param model                to run the script on, which must allow different images to be
+   *                             used from different threads
+   * @param view                 to transmit output and save images
+   * @param script               the script to run
+   * @param workerThreads        the number of threads running commands, 1 to run them in order
+   * @param skipUnusedResults    whether to skip loads and commands whose results are never used
+   * @param commandTimeoutMillis the time each command may run, in milliseconds, or 0 for no limit
+   * @throws IllegalArgumentException if workerThreads is not positive or the timeout is negative
+   */
+  public PlannedScriptController(
+      ImageProcessingModel model,
+      TextScriptImageProcessingView view,
+      Readable script,
+      int workerThreads,
+      boolean skipUnusedResults,
+      long commandTimeoutMillis) throws IllegalArgumentException {
+    this.model = Objects.requireNonNull(model);
+    this.view = Objects.requireNonNull(view);
+    this.script = Objects.requireNonNull(script);
+    if (workerThreads < 1) {
+      throw new IllegalArgumentException("Number of worker threads must be positive.");
+    }
+    this.workerThreads = workerThreads;
+    this.skipUnusedResults = skipUnusedResults;
+    if (commandTimeoutMillis < 0) {
+      throw new IllegalArgumentException("Command timeout cannot be negative.");
+    }
+    this.commandTimeoutMillis = commandTimeoutMillis;
+  }
+
+  /**
+   * Reads the whole script, then runs it on the worker threads, transmitting to this.view.
+   *
+   * @throws IOException if unable to transmit output, a command fails fatally, or the script runs
+   *                     out of input before quitting
+   */
+  @Override
+  public void startProcessor() throws IOException {
+    this.view.renderMessage("WELCOME TO IMAGE PROCESSOR\n" +
+        "Enter 'q' to quite. Enter 'help' for a list of commands\n");
+
+    ScriptPlan plan = ScriptPlan.parse(this.script).withCommandTimeout(this.commandTimeoutMillis);
+    if (this.skipUnusedResults) {
+      plan = plan.withoutUnusedResults(false);
+    }
+    if (this.workerThreads == 1) {
+      plan.run(this.model, this.view);
+      return;
+    }
+    ExecutorService workers = Executors.newFixedThreadPool(this.workerThreads);
+    try {
+      plan.run(this.model, this.view, workers);
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+}
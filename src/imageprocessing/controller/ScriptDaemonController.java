@@ -0,0 +1,346 @@
+package imageprocessing.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.view.TextScriptImageProcessingView;
+
+/**
+ * The {@code ScriptDaemonController} keeps one processor running and runs the scripts sent to it
+ * by clients on this machine, so that running a script does not start a new Java runtime, look up
+ * the image formats again, or run the image code before it is compiled. Each script is run like
+ * {@link TextScriptedImageProcessingController} runs a script file, with a model of its own, and
+ * the text it renders is sent back to the client as it is rendered.
+ *
+ * <p>The daemon listens on a port of the loopback address only, and runs scripts only for clients
+ * that can read its token: a random secret it writes, when started, to a file only its owner can
+ * read, and deletes when stopped. A client, see {@link #sendScript(Reader, int, Appendable)},
+ * sends the token on a line of its own, then the whole script, and then closes its side of the
+ * connection. Clients without the token are turned away without running anything. Relative file
+ * paths in scripts are resolved against the directory the daemon was started in, not the
+ * client's.</p>
+ */
+public class ScriptDaemonController implements ImageProcessingController {
+
+  /**
+   * The longest a token may be, in bytes.
+   */
+  private static final int MAX_TOKEN_BYTES = 64;
+
+  /**
+   * How long a client may take to send its token before it is turned away.
+   */
+  private static final int TOKEN_TIMEOUT_MILLIS = 10000;
+
+  private final ServerSocket server;
+  private final Appendable log;
+  private final int workerThreads;
+  private final Path tokenFile;
+  private final byte[] token;
+  private volatile boolean stopped;
+
+  /**
+   * Instantiates this controller, listening on the given port of the loopback address, and writes
+   * its token to the file clients of that port look for, see {@link #tokenFile(int)}.
+   *
+   * @param port          the port to listen on, or 0 for any free port
+   * @param log           to transmit a line per script run
+   * @param workerThreads the number of scripts run at the same time; later clients wait
+   * @throws IOException              if unable to listen on the port or write the token
+   * @throws IllegalArgumentException if workerThreads is not positive
+   */
+  public ScriptDaemonController(int port, Appendable log, int workerThreads)
+      throws IOException, IllegalArgumentException {
+    this(port, log, workerThreads, null);
+  }
+
+  /**
+   * Instantiates this controller, listening on the given port of the loopback address, and writes
+   * its token to the given file.
+   *
+   * @param port          the port to listen on, or 0 for any free port
+   * @param log           to transmit a line per script run
+   * @param workerThreads the number of scripts run at the same time; later clients wait
+   * @param tokenFile     the file to write the token to, or null for the file clients of the port
+   *                      look for
+   * @throws IOException              if unable to listen on the port or write the token
+   * @throws IllegalArgumentException if workerThreads is not positive
+   */
+  public ScriptDaemonController(int port, Appendable log, int workerThreads, Path tokenFile)
+      throws IOException, IllegalArgumentException {
+    if (workerThreads < 1) {
+      throw new IllegalArgumentException("Number of worker threads must be positive.");
+    }
+    this.log = Objects.requireNonNull(log);
+    this.workerThreads = workerThreads;
+    this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.tokenFile = tokenFile == null
+        ? ScriptDaemonController.tokenFile(this.server.getLocalPort()) : tokenFile;
+    byte[] secret = new byte[32];
+    new SecureRandom().nextBytes(secret);
+    this.token = Base64.getUrlEncoder().withoutPadding().encode(secret);
+    try {
+      ScriptDaemonController.writeToken(this.tokenFile, this.token);
+    } catch (IOException | RuntimeException e) {
+      this.server.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the file a daemon listening on the given port writes its token to, unless it was given
+   * another: {@code .imageprocessing/daemon-PORT.token} in the user's home directory.
+   *
+   * @param port the port the daemon listens on
+   * @return the token file
+   */
+  public static Path tokenFile(int port) {
+    return Paths.get(System.getProperty("user.home"), ".imageprocessing",
+        "daemon-" + port + ".token");
+  }
+
+  /**
+   * Writes a token to a file only its owner can read, replacing the file at once so that it is
+   * never seen half written.
+   *
+   * @param tokenFile the file to write
+   * @param token     the token
+   * @throws IOException if unable to write the file
+   */
+  private static void writeToken(Path tokenFile, byte[] token) throws IOException {
+    Path directory = tokenFile.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temp = directory.getFileSystem().supportedFileAttributeViews().contains("posix")
+        ? Files.createTempFile(directory, "daemon-", ".tmp",
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+        : Files.createTempFile(directory, "daemon-", ".tmp");
+    try {
+      Files.write(temp, token);
+      Files.move(temp, tokenFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Gets the port this daemon listens on.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return this.server.getLocalPort();
+  }
+
+  /**
+   * Runs the scripts sent by clients until {@link #stop()} is called. Scripts already sent are run
+   * to the end before returning.
+   *
+   * @throws IOException if unable to accept clients or transmit to the log
+   */
+  @Override
+  public void startProcessor() throws IOException {
+    this.transmit("Listening on " + this.server.getInetAddress().getHostAddress() + ":"
+        + this.getPort() + " with " + this.workerThreads + " workers.\n");
+    ExecutorService workers = Executors.newFixedThreadPool(this.workerThreads);
+    try {
+      while (!this.stopped) {
+        Socket client;
+        try {
+          client = this.server.accept();
+        } catch (SocketException e) {
+          if (this.stopped) {
+            break;
+          }
+          throw e;
+        }
+        workers.execute(() -> this.runScript(client));
+      }
+      workers.shutdown();
+      workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for scripts.");
+    } finally {
+      workers.shutdownNow();
+      this.server.close();
+      Files.deleteIfExists(this.tokenFile);
+    }
+    this.transmit("Stopped.\n");
+  }
+
+  /**
+   * Stops accepting clients. Can be called from any thread.
+   */
+  public void stop() {
+    this.stopped = true;
+    try {
+      this.server.close();
+    } catch (IOException e) {
+      // accepting fails either way, which ends the processor
+    }
+  }
+
+  /**
+   * Runs the script sent by one client, sending back what is rendered.
+   *
+   * @param client the connection to the client
+   */
+  private void runScript(Socket client) {
+    long start = System.nanoTime();
+    String result = "";
+    try (Socket socket = client) {
+      // flushed at every line, so the client sees each message as it is rendered
+      PrintStream out = new PrintStream(socket.getOutputStream(), true,
+          StandardCharsets.UTF_8.name());
+      socket.setSoTimeout(TOKEN_TIMEOUT_MILLIS);
+      byte[] sent = ScriptDaemonController.readTokenLine(socket.getInputStream());
+      if (sent == null || !MessageDigest.isEqual(sent, this.token)) {
+        out.append("Rejected: send the daemon's token first.\n");
+        this.transmit("Rejected a client from port " + client.getPort()
+            + " without the daemon's token.\n");
+        return;
+      }
+      socket.setSoTimeout(0);
+      Readable script = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+      BasicImageProcessingModel model = new BasicImageProcessingModel();
+      // scripts sent to the daemon often load the same files as the scripts before them
+      model.shareDecodedImages(true);
+      try {
+        new TextScriptedImageProcessingController(model,
+            new TextScriptImageProcessingView(out, model), script).startProcessor();
+      } catch (IOException | IllegalStateException e) {
+        result = " " + e.getMessage();
+        out.append(e.getMessage()).append("\n");
+      }
+      out.flush();
+    } catch (IOException e) {
+      result = " Lost the connection: " + e.getMessage();
+    }
+
+    try {
+      this.transmit("Ran script from port " + client.getPort() + " in "
+          + (System.nanoTime() - start) / 1000000 + " ms." + result + "\n");
+    } catch (IOException e) {
+      // the script has run, only the log line is lost
+    }
+  }
+
+  /**
+   * Reads the line a client starts with, which holds the daemon's token. The stream is read a byte
+   * at a time so that the script after the line is left to be read.
+   *
+   * @param in the stream from the client
+   * @return the line, without its end, or null if it is longer than any token or not sent in time
+   * @throws IOException if unable to read from the client
+   */
+  private static byte[] readTokenLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    try {
+      for (int b = in.read(); b >= 0 && b != '\n'; b = in.read()) {
+        if (line.size() == MAX_TOKEN_BYTES) {
+          return null;
+        }
+        line.write(b);
+      }
+    } catch (SocketTimeoutException e) {
+      return null;
+    }
+    return line.toByteArray();
+  }
+
+  /**
+   * Transmits a message to the log, from whichever worker is done.
+   *
+   * @param message the message to transmit
+   * @throws IOException if unable to transmit the message
+   */
+  private void transmit(String message) throws IOException {
+    synchronized (this.log) {
+      this.log.append(message);
+    }
+  }
+
+  /**
+   * Sends a script to a daemon on this machine and transmits what it renders as it arrives, with
+   * the token the daemon wrote to the file clients of its port look for.
+   *
+   * @param script the script to send, read to the end
+   * @param port   the port the daemon listens on
+   * @param out    to transmit what the daemon renders
+   * @throws IOException if unable to read the token, reach the daemon, send the script, or
+   *                     transmit output
+   */
+  public static void sendScript(Reader script, int port, Appendable out) throws IOException {
+    ScriptDaemonController.sendScript(script, port, ScriptDaemonController.tokenFile(port), out);
+  }
+
+  /**
+   * Sends a script to a daemon on this machine and transmits what it renders as it arrives, with
+   * the token the daemon wrote to the given file.
+   *
+   * @param script    the script to send, read to the end
+   * @param port      the port the daemon listens on
+   * @param tokenFile the file the daemon wrote its token to
+   * @param out       to transmit what the daemon renders
+   * @throws IOException if unable to read the token, reach the daemon, send the script, or
+   *                     transmit output
+   */
+  public static void sendScript(Reader script, int port, Path tokenFile, Appendable out)
+      throws IOException {
+    byte[] token;
+    try {
+      token = Files.readAllBytes(tokenFile);
+    } catch (IOException e) {
+      throw new IOException("Unable to read the daemon's token from " + tokenFile
+          + "; is a daemon running on port " + port + "?");
+    }
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      OutputStream toDaemon = socket.getOutputStream();
+      toDaemon.write(token);
+      toDaemon.write('\n');
+      char[] buffer = new char[8192];
+      StringBuilder text = new StringBuilder();
+      for (int read = script.read(buffer); read >= 0; read = script.read(buffer)) {
+        text.append(buffer, 0, read);
+      }
+      toDaemon.write(text.toString().getBytes(StandardCharsets.UTF_8));
+      toDaemon.flush();
+      socket.shutdownOutput();
+
+      Reader fromDaemon = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+      for (int read = fromDaemon.read(buffer); read >= 0; read = fromDaemon.read(buffer)) {
+        out.append(new String(buffer, 0, read));
+        if (out instanceof Flushable) {
+          ((Flushable) out).flush();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package imageprocessing.controller;
+
+/**
+ * The {@code ScriptOptions} represent the choices a text controller makes about how to run a
+ * script: how many threads save images in the background, how far ahead of the command being run
+ * the script is read to start decoding images it will load, how long a command may run before it
+ * is stopped, and how often the progress of a long command is rendered.
+ */
+public class ScriptOptions {
+
+  private final int saveThreads;
+  private final int lookaheadTokens;
+  private final long commandTimeoutMillis;
+  private final long progressIntervalMillis;
+
+  /**
+   * Instantiates these options with the default choices: images are saved before moving on, the
+   * script is not read ahead, and commands run to the end without rendering their progress.
+   */
+  public ScriptOptions() {
+    this(0, 0);
+  }
+
+  /**
+   * Instantiates these options with the given choices.
+   *
+   * @param saveThreads     the number of threads encoding images, or 0 to save before moving on
+   * @param lookaheadTokens the number of script tokens read ahead of the command being run, to
+   *                        start decoding the images loaded among them, or 0 to not read ahead
+   * @throws IllegalArgumentException if either number is negative
+   */
+  public ScriptOptions(int saveThreads, int lookaheadTokens) throws IllegalArgumentException {
+    this(saveThreads, lookaheadTokens, 0);
+  }
+
+  /**
+   * Instantiates these options with the given choices, stopping commands that run too long. A
+   * stopped command fails like a command given a missing image: its destination is left as it was,
+   * and the script moves on.
+   *
+   * @param saveThreads          the number of threads encoding images, or 0 to save before moving
+   *                             on
+   * @param lookaheadTokens      the number of script tokens read ahead of the command being run, to
+   *                             start decoding the images loaded among them, or 0 to not read ahead
+   * @param commandTimeoutMillis the time a command may run, in milliseconds, or 0 for no limit
+   * @throws IllegalArgumentException if any number is negative
+   */
+  public ScriptOptions(int saveThreads, int lookaheadTokens, long commandTimeoutMillis)
+      throws IllegalArgumentException {
+    this(saveThreads, lookaheadTokens, commandTimeoutMillis, 0);
+  }
+
+  /**
+   * Instantiates these options with the given choices, stopping commands that run too long and
+   * rendering the progress of long commands. A command still running after a progress interval
+   * renders a line saying how far along it is and about how long it has left, at most once per
+   * interval; quicker commands render nothing more.
+   *
+   * @param saveThreads            the number of threads encoding images, or 0 to save before
+   *                               moving on
+   * @param lookaheadTokens        the number of script tokens read ahead of the command being run,
+   *                               to start decoding the images loaded among them, or 0 to not read
+   *                               ahead
+   * @param commandTimeoutMillis   the time a command may run, in milliseconds, or 0 for no limit
+   * @param progressIntervalMillis the least time between progress lines, in milliseconds, or 0 to
+   *                               not render progress
+   * @throws IllegalArgumentException if any number is negative
+   */
+  public ScriptOptions(int saveThreads, int lookaheadTokens, long commandTimeoutMillis,
+      long progressIntervalMillis) throws IllegalArgumentException {
+    if (saveThreads < 0) {
+      throw new IllegalArgumentException("Number of save threads cannot be negative.");
+    }
+    if (lookaheadTokens < 0) {
+      throw new IllegalArgumentException("Number of lookahead tokens cannot be negative.");
+    }
+    if (commandTimeoutMillis < 0) {
+      throw new IllegalArgumentException("Command timeout cannot be negative.");
+    }
+    if (progressIntervalMillis < 0) {
+      throw new IllegalArgumentException("Progress interval cannot be negative.");
+    }
+    this.saveThreads = saveThreads;
+    this.lookaheadTokens = lookaheadTokens;
+    this.commandTimeoutMillis = commandTimeoutMillis;
+    this.progressIntervalMillis = progressIntervalMillis;
+  }
+
+  /**
+   * Gets the number of threads encoding images in the background.
+   *
+   * @return the number of threads, or 0 if images are saved before moving on
+   */
+  public int getSaveThreads() {
+    return this.saveThreads;
+  }
+
+  /**
+   * Gets the number of script tokens read ahead of the command being run.
+   *
+   * @return the number of tokens, or 0 if the script is not read ahead
+   */
+  public int getLookaheadTokens() {
+    return this.lookaheadTokens;
+  }
+
+  /**
+   * Gets the time a command may run before it is stopped.
+   *
+   * @return the time in milliseconds, or 0 if commands run to the end
+   */
+  public long getCommandTimeoutMillis() {
+    return this.commandTimeoutMillis;
+  }
+
+  /**
+   * Gets the least time between lines rendering the progress of a command.
+   *
+   * @return the time in milliseconds, or 0 if progress is not rendered
+   */
+  public long getProgressIntervalMillis() {
+    return this.progressIntervalMillis;
+  }
+}
@@ -0,0 +1,270 @@
+package imageprocessing.controller;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.function.Function;
+
+import imageprocessing.model.Commands.BlueComponent;
+import imageprocessing.model.Commands.BlurFilter;
+import imageprocessing.model.Commands.BrightenComponent;
+import imageprocessing.model.Commands.Command;
+import imageprocessing.model.Commands.DarkenComponent;
+import imageprocessing.model.Commands.DownsizeCommand;
+import imageprocessing.model.Commands.GreenComponent;
+import imageprocessing.model.Commands.GreyscaleComponent;
+import imageprocessing.model.Commands.HorizontalFlipCommand;
+import imageprocessing.model.Commands.IntensityComponent;
+import imageprocessing.model.Commands.LumaComponent;
+import imageprocessing.model.Commands.RedComponent;
+import imageprocessing.model.Commands.SharpenFilter;
+import imageprocessing.model.Commands.ValueComponent;
+import imageprocessing.model.Commands.VerticalFlipCommand;
+
+/**
+ * The {@code ScriptParser} reads a whole script into steps, reading tokens in exactly the order
+ * {@link TextScriptedImageProcessingController} does, so that a bad integer or a missing argument
+ * leaves the script in the same place and renders the same messages.
+ */
+class ScriptParser {
+
+  /**
+   * The commands run on the model, by name, each with its number of integer arguments (read before
+   * the image names) and a way to make the command from them.
+   */
+  private static final Map<String, ModelCommand> MODEL_COMMANDS = new HashMap<>();
+
+  static {
+    ScriptParser.put("red-component", 0, ints -> new RedComponent());
+    ScriptParser.put("green-component", 0, ints -> new GreenComponent());
+    ScriptParser.put("blue-component", 0, ints -> new BlueComponent());
+    ScriptParser.put("value-component", 0, ints -> new ValueComponent());
+    ScriptParser.put("intensity-component", 0, ints -> new IntensityComponent());
+    ScriptParser.put("luma-component", 0, ints -> new LumaComponent());
+    ScriptParser.put("horizontal-flip", 0, ints -> new HorizontalFlipCommand());
+    ScriptParser.put("vertical-flip", 0, ints -> new VerticalFlipCommand());
+    ScriptParser.put("brighten", 1, ints -> new BrightenComponent(ints[0]));
+    ScriptParser.put("darken", 1, ints -> new DarkenComponent(ints[0]));
+    ScriptParser.put("blur", 0, ints -> new BlurFilter());
+    ScriptParser.put("sharpen", 0, ints -> new SharpenFilter());
+    ScriptParser.put("greyscale", 0, ints -> new GreyscaleComponent());
+    ScriptParser.put("sepia", 0, ints -> new GreyscaleComponent());
+    ScriptParser.put("downsize", 2, ints -> new DownsizeCommand(ints[0], ints[1]));
+  }
+
+  private final Scanner script;
+  private StringBuilder echo;
+
+  /**
+   * Instantiates this parser to read the given script.
+   *
+   * @param script the script to read
+   */
+  private ScriptParser(Readable script) {
+    this.script = new Scanner(Objects.requireNonNull(script));
+    this.echo = new StringBuilder();
+  }
+
+  /**
+   * Reads a script into steps, up to and including its quit command, or up to the end of input.
+   *
+   * @param script the script to read
+   * @return the steps, the last of which quits or runs out of input
+   */
+  static List<ScriptStep> parse(Readable script) {
+    return new ScriptParser(script).parseSteps();
+  }
+
+  /**
+   * Reads every step of the script.
+   *
+   * @return the steps
+   */
+  private List<ScriptStep> parseSteps() {
+    List<ScriptStep> steps = new ArrayList<>();
+    while (true) {
+      if (!this.script.hasNext()) {
+        steps.add(ScriptStep.noMoreInputs(""));
+        return steps;
+      }
+      String name = this.script.next().toLowerCase().trim();
+      if (name.equals("q") || name.equals("quit")) {
+        steps.add(ScriptStep.quit());
+        return steps;
+      }
+      if (name.equals("h") || name.equals("help")) {
+        steps.add(ScriptStep.message(TextScriptedImageProcessingController.HELP_MESSAGE));
+        continue;
+      }
+
+      this.echo = new StringBuilder("Attempting to do " + name + ".\n");
+      try {
+        steps.add(this.parseCommand(name));
+      } catch (IllegalArgumentException e) {
+        steps.add(ScriptStep.message(this.echo
+            + TextScriptedImageProcessingController.errorMessage(e) + "\n"));
+      } catch (IOException e) {
+        steps.add(ScriptStep.noMoreInputs(this.echo.toString()));
+        return steps;
+      }
+    }
+  }
+
+  /**
+   * Reads the arguments of a command into a step.
+   *
+   * @param name the name of the command
+   * @return the step
+   * @throws IllegalArgumentException if an argument is not an integer where one is needed
+   * @throws IOException              if the script ends before the command's arguments
+   */
+  private ScriptStep parseCommand(String name) throws IllegalArgumentException, IOException {
+    switch (name) {
+      case "load": {
+        String filepath = this.getFrom();
+        String imageName = this.getTo();
+        return ScriptStep.load(this.echo.toString(), filepath, imageName);
+      }
+      case "load-scaled": {
+        String filepath = this.getFrom();
+        String imageName = this.getTo();
+        int subsampling = this.getNextInt();
+        return ScriptStep.load(this.echo.toString(), filepath, imageName, subsampling, null);
+      }
+      case "load-region": {
+        String filepath = this.getFrom();
+        String imageName = this.getTo();
+        Rectangle region = new Rectangle(this.getNextInt(), this.getNextInt(),
+            this.getNextInt(), this.getNextInt());
+        return ScriptStep.load(this.echo.toString(), filepath, imageName, 1, region);
+      }
+      case "save": {
+        String imageName = this.getFrom();
+        String filepath = this.getTo();
+        return ScriptStep.save(this.echo.toString(), imageName, filepath);
+      }
+      default:
+        break;
+    }
+
+    ModelCommand modelCommand = MODEL_COMMANDS.get(name);
+    if (modelCommand == null) {
+      return ScriptStep.message(this.echo + "Command " + name + " not identified.\n");
+    }
+    int[] ints = new int[modelCommand.intArgs];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = this.getNextInt();
+    }
+    Command command = modelCommand.factory.apply(ints);
+    String imageName = this.getFrom();
+    String destName = this.getTo();
+    return ScriptStep.command(this.echo.toString(), command, imageName, destName);
+  }
+
+  /**
+   * Reads the next token as a 'from', echoing it.
+   *
+   * @return the token
+   * @throws IOException if no more tokens
+   */
+  private String getFrom() throws IOException {
+    String token = this.getNext();
+    this.echo.append("... From: ").append(token).append(" ...\n");
+    return token;
+  }
+
+  /**
+   * Reads the next token as a 'to', echoing it.
+   *
+   * @return the token
+   * @throws IOException if no more tokens
+   */
+  private String getTo() throws IOException {
+    String token = this.getNext();
+    this.echo.append("... To: ").append(token).append(" ...\n");
+    return token;
+  }
+
+  /**
+   * Reads the next token.
+   *
+   * @return the token
+   * @throws IOException if no more tokens
+   */
+  private String getNext() throws IOException {
+    if (!this.script.hasNext()) {
+      throw new IOException("No more inputs found.");
+    }
+    return this.script.next().trim();
+  }
+
+  /**
+   * Reads the next token as an integer, leaving it to be read as a command if it is not one.
+   *
+   * @return the integer
+   * @throws IllegalArgumentException if the next token is not an integer
+   */
+  private int getNextInt() throws IllegalArgumentException {
+    if (!this.script.hasNextInt()) {
+      throw new IllegalArgumentException("First field must be an integer.");
+    }
+    return this.script.nextInt();
+  }
+
+  /**
+   * Makes a command run on the model from its name and integer arguments, as a script names it.
+   *
+   * @param name the name of the command
+   * @param ints the integer arguments of the command
+   * @return the command
+   * @throws IllegalArgumentException if no command has the name, or it takes a different number of
+   *                                  integer arguments
+   */
+  static Command command(String name, int[] ints) throws IllegalArgumentException {
+    ModelCommand modelCommand = MODEL_COMMANDS.get(name);
+    if (modelCommand == null) {
+      throw new IllegalArgumentException("Command " + name + " not identified.");
+    }
+    if (ints.length != modelCommand.intArgs) {
+      throw new IllegalArgumentException(
+          "Command " + name + " takes " + modelCommand.intArgs + " integer arguments.");
+    }
+    return modelCommand.factory.apply(ints);
+  }
+
+  /**
+   * Adds a command run on the model.
+   *
+   * @param name    the name of the command
+   * @param intArgs the number of integer arguments
+   * @param factory makes the command from its integer arguments
+   */
+  private static void put(String name, int intArgs, Function<int[], Command> factory) {
+    MODEL_COMMANDS.put(name, new ModelCommand(intArgs, factory));
+  }
+
+  /**
+   * A command run on the model, and how to make it.
+   */
+  private static class ModelCommand {
+
+    private final int intArgs;
+    private final Function<int[], Command> factory;
+
+    /**
+     * Instantiates this command.
+     *
+     * @param intArgs the number of integer arguments
+     * @param factory makes the command from its integer arguments
+     */
+    ModelCommand(int intArgs, Function<int[], Command> factory) {
+      this.intArgs = intArgs;
+      this.factory = factory;
+    }
+  }
+}
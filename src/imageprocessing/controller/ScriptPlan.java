@@ -0,0 +1,421 @@
+package imageprocessing.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import imageprocessing.model.CommandMonitor;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.view.TextScriptImageProcessingView;
+
+/**
+ * A {@code ScriptPlan} is a whole script read ahead of time into steps, which can be run one after
+ * the other or, on an executor, as a graph in which a step waits only for the earlier steps it
+ * depends on. A step depends on the last earlier step to write anything it reads or writes (an
+ * image name or a file), and on every step since then that read what it writes, so that each image
+ * name and file goes through the same values as when the script is run line by line. Saves also
+ * wait for every earlier step, so that a script ending in a fatal error leaves the same files
+ * behind. Messages are always rendered in the order of the script.
+ *
+ * <p>A plan is read once and can be run any number of times, on any number of models at once. A
+ * script may use parameters, written {@code ${name}}, in its file paths and image names, such as
+ * {@code load ${input} image}; {@link #bind(Map)} fills them in for one run without reading the
+ * script again.</p>
+ */
+public class ScriptPlan {
+
+  private final List<ScriptStep> steps;
+
+  /**
+   * Instantiates this plan with the given steps.
+   *
+   * @param steps the steps of the script, the last of which quits or runs out of input
+   */
+  ScriptPlan(List<ScriptStep> steps) {
+    this.steps = Collections.unmodifiableList(new ArrayList<>(Objects.requireNonNull(steps)));
+  }
+
+  /**
+   * Reads a whole script into a plan, up to its quit command or the end of input.
+   *
+   * @param script the script to read
+   * @return the plan
+   */
+  public static ScriptPlan parse(Readable script) {
+    return new ScriptPlan(ScriptParser.parse(script));
+  }
+
+  /**
+   * Makes a plan that quits at the end of the script even if the script does not end with a quit
+   * command, for scripts that are always run whole.
+   *
+   * @return the plan that quits at the end
+   */
+  ScriptPlan quitAtEnd() {
+    ScriptStep last = this.steps.get(this.steps.size() - 1);
+    if (last.kind() != ScriptStep.Kind.NO_MORE_INPUTS || !last.echo().isEmpty()) {
+      return this;
+    }
+    List<ScriptStep> steps = new ArrayList<>(this.steps);
+    steps.set(steps.size() - 1, ScriptStep.quit());
+    return new ScriptPlan(steps);
+  }
+
+  /**
+   * Finds the parameters used by this plan.
+   *
+   * @return the names of the parameters, each written {@code ${name}} in the script
+   */
+  public Set<String> parameters() {
+    Set<String> parameters = new HashSet<>();
+    for (ScriptStep step : this.steps) {
+      parameters.addAll(step.parameters());
+    }
+    return parameters;
+  }
+
+  /**
+   * Makes a plan with every parameter of this plan replaced by the given value. The commands of the
+   * plan are shared, so binding is cheap enough to do for every file a script is run on.
+   *
+   * @param parameters the value of each parameter, by name
+   * @return the plan with its parameters filled in
+   * @throws IllegalArgumentException if the plan uses a parameter without a value
+   */
+  public ScriptPlan bind(Map<String, String> parameters) throws IllegalArgumentException {
+    Objects.requireNonNull(parameters);
+    List<ScriptStep> bound = new ArrayList<>(this.steps.size());
+    for (ScriptStep step : this.steps) {
+      bound.add(step.bind(parameters));
+    }
+    return new ScriptPlan(bound);
+  }
+
+  /**
+   * Makes a plan that skips every load and command whose result is never used: its destination
+   * image is not read by any later command or save. A later load or command writing the same image
+   * does not make the result unused, since that step may fail and leave the image as it was. Each
+   * skipped step renders its usual messages followed by a note that it was skipped, in place of its
+   * result. A skipped step that would have failed is not reported as failing.
+   *
+   * @param keepFinalImages whether the images left at the end of the script are used, such as by
+   *                        an interactive session continuing on the same model, in which case no
+   *                        step is skipped
+   * @return the plan without unused steps
+   */
+  public ScriptPlan withoutUnusedResults(boolean keepFinalImages) {
+    if (keepFinalImages) {
+      // every load or command may be the last to write its image successfully
+      return this;
+    }
+    // walk back from the end, tracking which image names are read by a later step
+    Set<String> read = new HashSet<>();
+    List<ScriptStep> kept = new ArrayList<>(this.steps);
+    for (int i = this.steps.size() - 1; i >= 0; i--) {
+      ScriptStep step = this.steps.get(i);
+      switch (step.kind()) {
+        case LOAD:
+        case COMMAND:
+          if (!read.contains(step.to())) {
+            kept.set(i, ScriptStep.message(step.echo() + "Skipped, the result is never used.\n"));
+            break;
+          }
+          if (step.kind() == ScriptStep.Kind.COMMAND) {
+            read.add(step.from());
+          }
+          break;
+        case SAVE:
+          read.add(step.from());
+          break;
+        default:
+          break;
+      }
+    }
+    return new ScriptPlan(kept);
+  }
+
+  /**
+   * Makes a plan whose commands stop if they run longer than the given time. A stopped command
+   * fails like a command given a missing image: its destination is left as it was, and the script
+   * moves on.
+   *
+   * @param timeoutMillis the time each command may run, in milliseconds, or 0 for no limit
+   * @return the plan with a deadline on each command
+   * @throws IllegalArgumentException if the time is negative
+   */
+  public ScriptPlan withCommandTimeout(long timeoutMillis) throws IllegalArgumentException {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("Command timeout cannot be negative.");
+    }
+    if (timeoutMillis == 0) {
+      return this;
+    }
+    List<ScriptStep> limited = new ArrayList<>();
+    for (ScriptStep step : this.steps) {
+      limited.add(step.kind() != ScriptStep.Kind.COMMAND ? step
+          : step.withCommand(CommandMonitor.withTimeout(step.command(), timeoutMillis)));
+    }
+    return new ScriptPlan(limited);
+  }
+
+  /**
+   * Gets the steps of this plan.
+   *
+   * @return the steps, in the order of the script
+   */
+  List<ScriptStep> steps() {
+    return this.steps;
+  }
+
+  /**
+   * Runs this plan one step after the other, rendering the same messages as the text controller.
+   *
+   * @param model the model to run the plan on
+   * @param view  the view to render messages and save images with
+   * @return the messages of the loads, saves and commands that failed and were moved past
+   * @throws IOException if unable to render a message, a step fails fatally, or the script runs
+   *                     out of input before quitting
+   */
+  public List<String> run(ImageProcessingModel model, TextScriptImageProcessingView view)
+      throws IOException {
+    Objects.requireNonNull(model);
+    Objects.requireNonNull(view);
+
+    List<String> failures = new ArrayList<>();
+    for (ScriptStep step : this.steps) {
+      if (!ScriptPlan.render(step, ScriptPlan.runStep(step, model, view), view, failures)) {
+        break;
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Runs this plan one step after the other on the calling thread, except for the commands, which
+   * are handed to the given executor and waited for. Loads and saves, which spend much of their
+   * time on files, stay on the calling thread, while the commands, which only need a processor,
+   * share a bounded pool with every other caller.
+   *
+   * @param model           the model to run the plan on
+   * @param view            the view to render messages and save images with
+   * @param commandExecutor the executor to run the commands on
+   * @return the messages of the loads, saves and commands that failed and were moved past
+   * @throws IOException if unable to render a message, a step fails fatally, or the script runs
+   *                     out of input before quitting
+   */
+  public List<String> runCommandsOn(ImageProcessingModel model,
+      TextScriptImageProcessingView view, Executor commandExecutor) throws IOException {
+    Objects.requireNonNull(model);
+    Objects.requireNonNull(view);
+    Objects.requireNonNull(commandExecutor);
+
+    List<String> failures = new ArrayList<>();
+    for (ScriptStep step : this.steps) {
+      Outcome outcome = step.kind() != ScriptStep.Kind.COMMAND
+          ? ScriptPlan.runStep(step, model, view)
+          : CompletableFuture.supplyAsync(
+              () -> ScriptPlan.runStep(step, model, view), commandExecutor).join();
+      if (!ScriptPlan.render(step, outcome, view, failures)) {
+        break;
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Runs this plan on the given executor, running steps that do not depend on each other at the
+   * same time, and rendering the same messages as the text controller, in the same order.
+   *
+   * @param model    the model to run the plan on, which must allow different images to be used
+   *                 from different threads
+   * @param view     the view to render messages and save images with
+   * @param executor the executor to run the steps on
+   * @return the messages of the loads, saves and commands that failed and were moved past
+   * @throws IOException if unable to render a message, a step fails fatally, or the script runs
+   *                     out of input before quitting
+   */
+  public List<String> run(ImageProcessingModel model, TextScriptImageProcessingView view,
+      Executor executor) throws IOException {
+    Objects.requireNonNull(model);
+    Objects.requireNonNull(view);
+    Objects.requireNonNull(executor);
+
+    List<String> failures = new ArrayList<>();
+    List<CompletableFuture<Outcome>> outcomes = this.schedule(model, view, executor);
+    for (int i = 0; i < this.steps.size(); i++) {
+      if (!ScriptPlan.render(this.steps.get(i), outcomes.get(i).join(), view, failures)) {
+        break;
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Renders the messages of a step that has run, and ends the script if the step does.
+   *
+   * @param step     the step that has run
+   * @param outcome  what happened when it ran
+   * @param view     the view to render messages with
+   * @param failures the messages of the steps that failed so far, added to if this one did
+   * @return false if the script quits after this step
+   * @throws IOException if unable to render a message, the step failed fatally, or the script ran
+   *                     out of input
+   */
+  private static boolean render(ScriptStep step, Outcome outcome,
+      TextScriptImageProcessingView view, List<String> failures) throws IOException {
+    view.renderMessage(step.echo() + outcome.message);
+    if (outcome.failed) {
+      failures.add(outcome.message.trim());
+    }
+    if (outcome.fatal != null) {
+      throw new IOException(outcome.fatal);
+    }
+    if (step.kind() == ScriptStep.Kind.NO_MORE_INPUTS) {
+      throw new IOException("No more inputs found.");
+    }
+    if (step.kind() == ScriptStep.Kind.QUIT) {
+      view.renderMessage("Bye!\n");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Works out which earlier steps each step depends on.
+   *
+   * @return for each step, the indices of the steps it waits for
+   */
+  List<Set<Integer>> dependencies() {
+    Map<String, Integer> lastWriter = new HashMap<>();
+    Map<String, List<Integer>> readersSinceWrite = new HashMap<>();
+    List<Integer> sinceLastSave = new ArrayList<>();
+    List<Set<Integer>> dependencies = new ArrayList<>();
+
+    for (int i = 0; i < this.steps.size(); i++) {
+      ScriptStep step = this.steps.get(i);
+      Set<Integer> waitFor = new LinkedHashSet<>();
+      for (String resource : step.resources()) {
+        if (lastWriter.containsKey(resource)) {
+          waitFor.add(lastWriter.get(resource));
+        }
+      }
+      for (String resource : step.writes()) {
+        waitFor.addAll(readersSinceWrite.getOrDefault(resource, Collections.emptyList()));
+      }
+      if (step.kind() == ScriptStep.Kind.SAVE) {
+        // the last save already waited for every step before it
+        waitFor.addAll(sinceLastSave);
+        sinceLastSave.clear();
+      }
+      waitFor.remove(i);
+      dependencies.add(waitFor);
+
+      for (String resource : step.reads()) {
+        readersSinceWrite.computeIfAbsent(resource, r -> new ArrayList<>()).add(i);
+      }
+      for (String resource : step.writes()) {
+        lastWriter.put(resource, i);
+        readersSinceWrite.remove(resource);
+      }
+      sinceLastSave.add(i);
+    }
+    return dependencies;
+  }
+
+  /**
+   * Starts every step on the executor as soon as the steps it depends on are done.
+   *
+   * @param model    the model to run the steps on
+   * @param view     the view to save images with
+   * @param executor the executor to run the steps on
+   * @return the outcome of each step
+   */
+  private List<CompletableFuture<Outcome>> schedule(ImageProcessingModel model,
+      TextScriptImageProcessingView view, Executor executor) {
+    List<Set<Integer>> dependencies = this.dependencies();
+    List<CompletableFuture<Outcome>> outcomes = new ArrayList<>();
+    AtomicInteger firstFatal = new AtomicInteger(Integer.MAX_VALUE);
+
+    for (int i = 0; i < this.steps.size(); i++) {
+      int index = i;
+      ScriptStep step = this.steps.get(i);
+      CompletableFuture<?>[] waitFor = dependencies.get(i).stream()
+          .map(outcomes::get).toArray(CompletableFuture[]::new);
+      outcomes.add(CompletableFuture.allOf(waitFor).thenApplyAsync(done -> {
+        if (step.kind() == ScriptStep.Kind.SAVE && firstFatal.get() < index) {
+          // the script ends before this save when run line by line
+          return new Outcome("", false, null);
+        }
+        Outcome outcome = ScriptPlan.runStep(step, model, view);
+        if (outcome.fatal != null) {
+          firstFatal.accumulateAndGet(index, Math::min);
+        }
+        return outcome;
+      }, executor));
+    }
+    return outcomes;
+  }
+
+  /**
+   * Runs one step, catching its failure.
+   *
+   * @param step  the step to run
+   * @param model the model to run the step on
+   * @param view  the view to save images with
+   * @return the outcome of the step
+   */
+  private static Outcome runStep(ScriptStep step, ImageProcessingModel model,
+      TextScriptImageProcessingView view) {
+    switch (step.kind()) {
+      case LOAD:
+      case SAVE:
+      case COMMAND:
+        try {
+          step.run(model, view);
+          return new Outcome("Success!\n", false, null);
+        } catch (IllegalArgumentException | CancellationException e) {
+          return new Outcome(TextScriptedImageProcessingController.errorMessage(e) + "\n", true,
+              null);
+        } catch (Exception e) {
+          return new Outcome("", false, e);
+        }
+      default:
+        return new Outcome("", false, null);
+    }
+  }
+
+  /**
+   * What happened when a step ran: the message to render after its echo, and the exception that
+   * ends the script, if any.
+   */
+  private static class Outcome {
+
+    private final String message;
+    private final boolean failed;
+    private final Exception fatal;
+
+    /**
+     * Instantiates this outcome.
+     *
+     * @param message the message to render after the step's echo
+     * @param failed  whether the step failed and the script moved past it
+     * @param fatal   the exception ending the script, or null
+     */
+    Outcome(String message, boolean failed, Exception fatal) {
+      this.message = message;
+      this.failed = failed;
+      this.fatal = fatal;
+    }
+  }
+}
@@ -0,0 +1,376 @@
+package imageprocessing.controller;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import imageprocessing.model.Commands.Command;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.view.TextScriptImageProcessingView;
+
+/**
+ * A {@code ScriptStep} is one command of a parsed script, together with the messages the text
+ * controller renders while reading it. A step knows which images and files it reads and writes, so
+ * that steps touching different images can be run at the same time.
+ */
+class ScriptStep {
+
+  /**
+   * The kinds of steps in a script.
+   */
+  enum Kind {
+    LOAD, SAVE, COMMAND, MESSAGE, QUIT, NO_MORE_INPUTS
+  }
+
+  private final Kind kind;
+  private final String echo;
+  private final String from;
+  private final String to;
+  private final int subsampling;
+  private final Rectangle region;
+  private final Command command;
+
+  /**
+   * Instantiates this step.
+   *
+   * @param kind        the kind of step
+   * @param echo        the messages rendered while reading the step
+   * @param from        the file or image read by the step, or null
+   * @param to          the file or image written by the step, or null
+   * @param subsampling the subsampling factor of a load, or 0 to load the whole file
+   * @param region      the region of a load, or null for the whole image
+   * @param command     the command run by a command step, or null
+   */
+  private ScriptStep(Kind kind, String echo, String from, String to, int subsampling,
+      Rectangle region, Command command) {
+    this.kind = kind;
+    this.echo = Objects.requireNonNull(echo);
+    this.from = from;
+    this.to = to;
+    this.subsampling = subsampling;
+    this.region = region;
+    this.command = command;
+  }
+
+  /**
+   * Makes a step loading an image file.
+   *
+   * @param echo      the messages rendered while reading the step
+   * @param filepath  the file to load
+   * @param imageName the name to load the image to
+   * @return the step
+   */
+  static ScriptStep load(String echo, String filepath, String imageName) {
+    // a subsampling of 0 marks a load of the whole file
+    return new ScriptStep(Kind.LOAD, echo, filepath, imageName, 0, null, null);
+  }
+
+  /**
+   * Makes a step loading part of an image file.
+   *
+   * @param echo        the messages rendered while reading the step
+   * @param filepath    the file to load
+   * @param imageName   the name to load the image to
+   * @param subsampling keep every subsampling-th row and column
+   * @param region      the area of the image to load, or null for the whole image
+   * @return the step
+   */
+  static ScriptStep load(String echo, String filepath, String imageName, int subsampling,
+      Rectangle region) {
+    return new ScriptStep(Kind.LOAD, echo, filepath, imageName, subsampling, region, null);
+  }
+
+  /**
+   * Makes a step saving an image to file.
+   *
+   * @param echo      the messages rendered while reading the step
+   * @param imageName the image to save
+   * @param filepath  the file to save to
+   * @return the step
+   */
+  static ScriptStep save(String echo, String imageName, String filepath) {
+    return new ScriptStep(Kind.SAVE, echo, imageName, filepath, 1, null, null);
+  }
+
+  /**
+   * Makes a step running a command on an image.
+   *
+   * @param echo      the messages rendered while reading the step
+   * @param command   the command to run
+   * @param imageName the image to run the command on
+   * @param destName  the name to give the result
+   * @return the step
+   */
+  static ScriptStep command(String echo, Command command, String imageName, String destName) {
+    return new ScriptStep(Kind.COMMAND, echo, imageName, destName, 1, null,
+        Objects.requireNonNull(command));
+  }
+
+  /**
+   * Makes a step that only renders messages, such as help or a command that could not be read.
+   *
+   * @param echo the messages to render
+   * @return the step
+   */
+  static ScriptStep message(String echo) {
+    return new ScriptStep(Kind.MESSAGE, echo, null, null, 1, null, null);
+  }
+
+  /**
+   * Makes the step ending a script that quits.
+   *
+   * @return the step
+   */
+  static ScriptStep quit() {
+    return new ScriptStep(Kind.QUIT, "", null, null, 1, null, null);
+  }
+
+  /**
+   * Makes the step ending a script that runs out of input.
+   *
+   * @param echo the messages rendered before running out
+   * @return the step
+   */
+  static ScriptStep noMoreInputs(String echo) {
+    return new ScriptStep(Kind.NO_MORE_INPUTS, echo, null, null, 1, null, null);
+  }
+
+  /**
+   * Makes a copy of this step with every {@code ${name}} in its image names, file paths, and
+   * messages replaced by the value of that parameter. The command run by the step is shared.
+   *
+   * @param parameters the value of each parameter
+   * @return the copy
+   * @throws IllegalArgumentException if the step uses a parameter without a value
+   */
+  ScriptStep bind(Map<String, String> parameters) throws IllegalArgumentException {
+    return new ScriptStep(this.kind, ScriptStep.substitute(this.echo, parameters),
+        ScriptStep.substitute(this.from, parameters), ScriptStep.substitute(this.to, parameters),
+        this.subsampling, this.region, this.command);
+  }
+
+  /**
+   * Makes a copy of this step that runs the given command in place of its own.
+   *
+   * @param command the command to run, such as this step's command with a deadline
+   * @return the copy
+   */
+  ScriptStep withCommand(Command command) {
+    return new ScriptStep(this.kind, this.echo, this.from, this.to, this.subsampling, this.region,
+        Objects.requireNonNull(command));
+  }
+
+  /**
+   * Gets the command run by this step.
+   *
+   * @return the command, or null if this is not a command step
+   */
+  Command command() {
+    return this.command;
+  }
+
+  /**
+   * Finds the parameters used by this step.
+   *
+   * @return the names of the parameters
+   */
+  Set<String> parameters() {
+    Set<String> parameters = new HashSet<>();
+    for (String text : new String[]{this.echo, this.from, this.to}) {
+      int start = text == null ? -1 : text.indexOf("${");
+      while (start >= 0) {
+        int end = text.indexOf('}', start);
+        if (end < 0) {
+          break;
+        }
+        parameters.add(text.substring(start + 2, end));
+        start = text.indexOf("${", end);
+      }
+    }
+    return parameters;
+  }
+
+  /**
+   * Replaces every {@code ${name}} in the given text by the value of that parameter.
+   *
+   * @param text       the text, or null
+   * @param parameters the value of each parameter
+   * @return the text with its parameters replaced, or null if the text is null
+   * @throws IllegalArgumentException if the text uses a parameter without a value
+   */
+  private static String substitute(String text, Map<String, String> parameters)
+      throws IllegalArgumentException {
+    if (text == null || !text.contains("${")) {
+      return text;
+    }
+    StringBuilder result = new StringBuilder();
+    int copied = 0;
+    int start = text.indexOf("${");
+    while (start >= 0) {
+      int end = text.indexOf('}', start);
+      if (end < 0) {
+        break;
+      }
+      String name = text.substring(start + 2, end);
+      if (!parameters.containsKey(name)) {
+        throw new IllegalArgumentException("No value given for script parameter " + name + ".");
+      }
+      result.append(text, copied, start).append(parameters.get(name));
+      copied = end + 1;
+      start = text.indexOf("${", copied);
+    }
+    return result.append(text.substring(copied)).toString();
+  }
+
+  /**
+   * Gets the kind of this step.
+   *
+   * @return the kind
+   */
+  Kind kind() {
+    return this.kind;
+  }
+
+  /**
+   * Gets the messages rendered while reading this step.
+   *
+   * @return the messages
+   */
+  String echo() {
+    return this.echo;
+  }
+
+  /**
+   * Gets the image or file read by this step.
+   *
+   * @return the image name or filepath, or null if none
+   */
+  String from() {
+    return this.from;
+  }
+
+  /**
+   * Gets the image or file written by this step.
+   *
+   * @return the image name or filepath, or null if none
+   */
+  String to() {
+    return this.to;
+  }
+
+  /**
+   * Gets the images and files this step reads, each named as a resource.
+   *
+   * @return the resources read
+   */
+  Set<String> reads() {
+    switch (this.kind) {
+      case LOAD:
+        return Collections.singleton(ScriptStep.file(this.from));
+      case SAVE:
+      case COMMAND:
+        return Collections.singleton(ScriptStep.image(this.from));
+      default:
+        return Collections.emptySet();
+    }
+  }
+
+  /**
+   * Gets the images and files this step writes, each named as a resource.
+   *
+   * @return the resources written
+   */
+  Set<String> writes() {
+    switch (this.kind) {
+      case LOAD:
+      case COMMAND:
+        return Collections.singleton(ScriptStep.image(this.to));
+      case SAVE:
+        return Collections.singleton(ScriptStep.file(this.to));
+      default:
+        return Collections.emptySet();
+    }
+  }
+
+  /**
+   * Gets every resource this step touches.
+   *
+   * @return the resources read or written
+   */
+  Set<String> resources() {
+    Set<String> resources = new HashSet<>(this.reads());
+    resources.addAll(this.writes());
+    return resources;
+  }
+
+  /**
+   * Runs this step on the given model and view. Messages are not rendered.
+   *
+   * @param model the model to run the step on
+   * @param view  the view to save images with
+   * @throws IllegalArgumentException if the step fails in a way the controller reports and moves
+   *                                  past
+   * @throws Exception                if the step fails in a way that ends the script
+   */
+  void run(ImageProcessingModel model, TextScriptImageProcessingView view) throws Exception {
+    switch (this.kind) {
+      case LOAD:
+        if (this.subsampling == 0) {
+          model.loadImageFromFile(this.from, this.to);
+        } else {
+          model.loadImageFromFile(this.from, this.to, this.subsampling, this.region);
+        }
+        break;
+      case SAVE:
+        view.saveImageToFile(model.image(this.from), this.to);
+        break;
+      case COMMAND:
+        model.doCommand(this.command, this.from, this.to);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Names an image as a resource.
+   *
+   * @param imageName the name of the image
+   * @return the resource
+   */
+  static String image(String imageName) {
+    return "image " + imageName;
+  }
+
+  /**
+   * Names a file as a resource, so that different paths to the same file are the same resource.
+   *
+   * @param filepath the path of the file
+   * @return the resource
+   */
+  static String file(String filepath) {
+    return "file " + ScriptStep.canonicalPath(filepath);
+  }
+
+  /**
+   * Gets the canonical path of a file, the same for every path to it, following symbolic links and
+   * matching the case the file system stores names in. Falls back to the normalized absolute path
+   * if the canonical path cannot be found.
+   *
+   * @param filepath the path of the file
+   * @return the canonical path
+   */
+  static String canonicalPath(String filepath) {
+    File file = new File(filepath);
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException e) {
+      return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package imageprocessing.controller;
 
+import java.awt.Rectangle;
+
 /**
  * Represents features for a swing app.
  */
@@ -14,6 +16,18 @@ public interface SwingAppFeatures {
    */
   Void loadImage(String absolutePath, String showInputDialog);
 
+  /**
+   * Load part of the image from the specified filePath and assign it the given name, decoding only
+   * every subsampling-th row and column inside the given region. Overwrites the destination name if
+   * already taken.
+   *
+   * @param absolutePath the file to load the image from
+   * @param imageName    the name to give the loaded image
+   * @param subsampling  keep every subsampling-th row and column, 1 to keep all of them
+   * @param region       the area of the image to load, or null to load the whole image
+   */
+  Void loadImage(String absolutePath, String imageName, int subsampling, Rectangle region);
+
   /**
    * Displays the given image to the view.
    *
@@ -1,9 +1,16 @@
 package imageprocessing.controller;
 
+import java.awt.Rectangle;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.swing.SwingUtilities;
 
 import imageprocessing.model.Commands.BlueComponent;
 import imageprocessing.model.Commands.BlurFilter;
@@ -20,31 +27,80 @@ import imageprocessing.model.Commands.RedComponent;
 import imageprocessing.model.Commands.SharpenFilter;
 import imageprocessing.model.Commands.ValueComponent;
 import imageprocessing.model.Commands.VerticalFlipCommand;
+import imageprocessing.model.CommandMonitor;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.view.ImageProcessingSwingView;
 
 /**
  * Represents a controller for a swing app.
+ *
+ * <p>Loads, commands, and saves can run on a background executor, so that the window keeps
+ * responding while they run. The view then shows their progress and can cancel a command, and only
+ * once a result is ready is it displayed. One runs at a time.</p>
  */
 public class SwingController implements SwingAppFeatures {
 
   private final ImageProcessingModel model;
   private final ImageProcessingSwingView view;
   private final Map<String, Callable> commandMap;
+  private final Executor background;
+  private final Executor display;
+  private CommandMonitor running;
 
   /**
-   * Instantiate this SwingController with the given model and view.
+   * Instantiate this SwingController with the given model and view, running everything on the
+   * thread that asks for it.
    *
    * @param model model to run the processor
    * @param view  view to field user input from and output to
    */
   public SwingController(ImageProcessingModel model, ImageProcessingSwingView view) {
+    this(model, view, Runnable::run, Runnable::run);
+  }
+
+  /**
+   * Instantiate this SwingController with the given model and view, running loads, commands, and
+   * saves on the given executor and showing their results on the event dispatch thread.
+   *
+   * @param model      model to run the processor, which must allow images to be used from
+   *                   different threads
+   * @param view       view to field user input from and output to
+   * @param background the executor to run loads, commands, and saves on
+   */
+  public SwingController(ImageProcessingModel model, ImageProcessingSwingView view,
+      Executor background) {
+    this(model, view, background, SwingUtilities::invokeLater);
+  }
+
+  /**
+   * Instantiate this SwingController with the given model, view, and executors.
+   *
+   * @param model      model to run the processor
+   * @param view       view to field user input from and output to
+   * @param background the executor to run loads, commands, and saves on
+   * @param display    the executor to show results on
+   */
+  private SwingController(ImageProcessingModel model, ImageProcessingSwingView view,
+      Executor background, Executor display) {
     this.model = Objects.requireNonNull(model);
     this.view = Objects.requireNonNull(view);
+    this.background = Objects.requireNonNull(background);
+    this.display = Objects.requireNonNull(display);
 
     this.commandMap = new HashMap<>();
     this.commandMap.put("Load Image", (() -> (
             this.loadImage(this.view.getFilepath(true), this.view.getTo()))));
+    this.commandMap.put("Load Scaled", (() -> (
+            this.loadImage(this.view.getFilepath(true), this.view.getTo(),
+                    this.view.getNextIntToken("Specify to keep every how many pixels:"),
+                    null))));
+    this.commandMap.put("Load Region", (() -> (
+            this.loadImage(this.view.getFilepath(true), this.view.getTo(), 1,
+                    new Rectangle(
+                            this.view.getNextIntToken("Specify left edge of region:"),
+                            this.view.getNextIntToken("Specify top edge of region:"),
+                            this.view.getNextIntToken("Specify width of region:"),
+                            this.view.getNextIntToken("Specify height of region:"))))));
     this.commandMap.put("Save Image", (() -> (
             this.saveImage("", this.view.getFilepath(false)))));
     this.commandMap.put("Red Component", (() -> (
@@ -86,20 +142,29 @@ public class SwingController implements SwingAppFeatures {
                     this.view.getNextIntToken("Specify new height:"))))));
     this.commandMap.put("Change Image", (() -> (
             this.displayImage(this.view.getFrom()))));
+    this.commandMap.put("Cancel", (() -> (
+            this.cancel())));
   }
 
   @Override
   public Void loadImage(String absolutePath, String imageName) {
-    try {
-      this.model.loadImageFromFile(absolutePath, imageName);
-      this.view.addImage(imageName);
-      this.displayImage(imageName);
-    } catch (Exception e) {
-      String error = e.toString();
-      this.view.renderMessage(error.substring(error.indexOf("Exception:") + 10) + "\n");
-    }
+    return this.inBackground("Loading " + imageName, null,
+        () -> this.model.loadImageFromFile(absolutePath, imageName),
+        () -> {
+          this.view.addImage(imageName);
+          this.displayImage(imageName);
+        });
+  }
 
-    return null;
+  @Override
+  public Void loadImage(String absolutePath, String imageName, int subsampling,
+                        Rectangle region) {
+    return this.inBackground("Loading " + imageName, null,
+        () -> this.model.loadImageFromFile(absolutePath, imageName, subsampling, region),
+        () -> {
+          this.view.addImage(imageName);
+          this.displayImage(imageName);
+        });
   }
 
 
@@ -110,25 +175,102 @@ public class SwingController implements SwingAppFeatures {
    * @param toDo     function object to do on the model
    */
   private Void doCommand(Command toDo) {
+    String from;
+    String to;
     try {
-      String from = this.view.getFrom();
-      String to = this.view.getTo();
-      System.out.println("doing");
-      this.model.doCommand(toDo, from, to);
-      System.out.println("viewing");
-      this.view.addImage(to);
-      System.out.println("displaying");
-      this.displayImage(to);
-      System.out.println("done");
+      from = this.view.getFrom();
+      to = this.view.getTo();
     } catch (Exception e) {
-      String error = e.toString();
-      this.view.renderMessage(error.substring(error.indexOf("Exception:") + 10) + "\n");
+      this.renderError(e);
+      return null;
+    }
+
+    CommandMonitor monitor = new CommandMonitor();
+    return this.inBackground("Making " + to, monitor,
+        () -> this.model.doCommand(monitor.watch(toDo), from, to),
+        () -> {
+          this.view.addImage(to);
+          this.displayImage(to);
+        });
+  }
+
+  /**
+   * Runs some work on the background executor, showing its progress, and then shows its result.
+   * Renders a message instead if other work is still running, the work fails, or it is cancelled.
+   * Only work followed by a monitor can be cancelled, and it is cancelled only if it stops before
+   * it is done; work that got to the end, and so gave the model its result, is shown as done.
+   *
+   * @param description what the work does
+   * @param monitor     follows the work, or null if it cannot be measured or cancelled
+   * @param work        the work to run
+   * @param show        shows the result of the work, run by the display executor
+   * @return null for use as a function object
+   */
+  private Void inBackground(String description, CommandMonitor monitor, Callable<?> work,
+      Runnable show) {
+    if (this.running != null) {
+      this.view.renderMessage("Wait for the current work to finish, or cancel it.\n");
+      return null;
     }
+    this.running = monitor == null ? new CommandMonitor() : monitor;
+    this.view.showWorkStarted(description, monitor);
 
+    CompletableFuture.supplyAsync(() -> {
+      try {
+        return work.call();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, this.background).whenComplete((result, error) -> this.display.execute(() -> {
+      this.running = null;
+      this.view.showWorkFinished();
+      Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause() : error;
+      if (cause instanceof CancellationException) {
+        this.view.renderMessage("Cancelled " + description.toLowerCase() + ".\n");
+      } else if (cause != null) {
+        this.renderError(cause);
+      } else {
+        try {
+          show.run();
+        } catch (RuntimeException e) {
+          this.renderError(e);
+        }
+      }
+    }));
+    return null;
+  }
+
+  /**
+   * Renders the message of an error, without the name of its class.
+   *
+   * @param error the error
+   */
+  private void renderError(Throwable error) {
+    String message = error.toString();
+    this.view.renderMessage(message.substring(message.indexOf("Exception:") + 10) + "\n");
+  }
+
+  /**
+   * Cancels the command running in the background, if any, which stops before it is done. Loads
+   * and saves cannot be cancelled, and run to the end.
+   *
+   * @return null for use as a function object
+   */
+  private Void cancel() {
+    if (this.running != null) {
+      this.running.cancel();
+    }
     return null;
   }
 
   public void processCommand(String command) {
+    if (this.running != null && !command.equals("Cancel") && !command.equals("Change Image")) {
+      this.view.renderMessage("Wait for the current work to finish, or cancel it.\n");
+      return;
+    }
     if(this.commandMap.containsKey(command)){
       System.out.println("calling");
       try {
@@ -160,13 +302,8 @@ public class SwingController implements SwingAppFeatures {
    */
   @Override
   public Void saveImage(String imageName, String absolutePath) {
-    try {
-      this.view.saveImageToFile(this.model.image(imageName), absolutePath);
-    } catch (Exception e) {
-      String error = e.toString();
-      this.view.renderMessage(error.substring(error.indexOf("Exception:") + 10) + "\n");
-    }
-
-    return null;
+    return this.inBackground("Saving " + absolutePath, null,
+        () -> this.view.saveImageToFile(this.model.image(imageName), absolutePath),
+        () -> { });
   }
 }
@@ -1,18 +1,32 @@
 package imageprocessing.controller;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.CommandMonitor;
 import imageprocessing.model.Commands.BlueComponent;
 import imageprocessing.model.Commands.BlurFilter;
 import imageprocessing.model.Commands.BrightenComponent;
+import imageprocessing.model.Commands.Command;
 import imageprocessing.model.Commands.DarkenComponent;
 import imageprocessing.model.Commands.DownsizeCommand;
 import imageprocessing.model.Commands.GreenComponent;
@@ -25,7 +39,9 @@ import imageprocessing.model.Commands.SharpenFilter;
 import imageprocessing.model.Commands.ValueComponent;
 import imageprocessing.model.Commands.VerticalFlipCommand;
 import imageprocessing.model.GreyscaleImage;
+import imageprocessing.model.Image;
 import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ProgressListener;
 import imageprocessing.view.TextScriptImageProcessingView;
 
 /**
@@ -38,10 +54,44 @@ import imageprocessing.view.TextScriptImageProcessingView;
  */
 public class TextScriptedImageProcessingController implements ImageProcessingController {
 
+  /**
+   * The message rendered for the help command.
+   */
+  static final String HELP_MESSAGE = "Commands to try:\n" +
+      "   load IMAGE-PATH IMAGE-NAME\n" +
+      "   load-scaled IMAGE-PATH IMAGE-NAME FACTOR\n" +
+      "   load-region IMAGE-PATH IMAGE-NAME X Y WIDTH HEIGHT\n" +
+      "   save IMAGE-NAME IMAGE-PATH\n" +
+      "   red-component IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   blue-component IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   green-component IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   value-component IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   intensity-component IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   luma-component IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   horizontal-flip IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   vertical-flip IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   brighten IMAGE-NAME DEST-IMAGE-NAME INCREMENT\n" +
+      "   darken IMAGE-NAME DEST-IMAGE-NAME INCREMENT\n" +
+      "   blur IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   sharpen IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   greyscale IMAGE-NAME DEST-IMAGE-NAME\n" +
+      "   sepia IMAGE-NAME DEST-IMAGE-NAME\n";
+
   private final ImageProcessingModel model;
   private final TextScriptImageProcessingView view;
   private final Scanner userInput;
   private final Map<String, Callable> commandMap;
+  private final ExecutorService saveExecutor;
+  // by the canonical path of the file saved to, so that different paths to one file are one key
+  private final Map<String, PendingSave> pendingSaves;
+  // failures of saves no longer pending, to report before quitting
+  private final List<String> saveFailures;
+  private final int lookaheadTokens;
+  private final ExecutorService prefetchExecutor;
+  private final List<String> lookahead;
+  private final long commandTimeoutMillis;
+  private final ProgressListener progress;
+  private int scannedTokens;
 
   /**
    * Instantiates this controller with the given model, view, and scanner. And creates the
@@ -55,46 +105,115 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
       ImageProcessingModel model,
       TextScriptImageProcessingView view,
       Readable userInput) {
+    this(model, view, userInput, 0);
+  }
+
+  /**
+   * Instantiates this controller with the given model, view, and scanner, saving images in the
+   * background on the given number of threads. A save command then returns as soon as the image is
+   * queued, and all queued saves are waited for (and their failures reported) before quitting.
+   *
+   * @param model       to represent the game state
+   * @param view        to transmit output from the game
+   * @param userInput   to field user input
+   * @param saveThreads the number of threads encoding images, or 0 to save before moving on
+   * @throws IllegalArgumentException if saveThreads is negative
+   */
+  public TextScriptedImageProcessingController(
+      ImageProcessingModel model,
+      TextScriptImageProcessingView view,
+      Readable userInput,
+      int saveThreads) throws IllegalArgumentException {
+    this(model, view, userInput, new ScriptOptions(saveThreads, 0));
+  }
+
+  /**
+   * Instantiates this controller with the given model, view, scanner, and options. With lookahead
+   * tokens, the script is read that far ahead of the command being run, and the files loaded by the
+   * commands read ahead start decoding in the background, so that decoding overlaps with the
+   * commands before them. Reading ahead waits for input, so it is meant for scripts rather than
+   * commands typed into the console. With a command timeout, a command still running after that
+   * long stops, leaving its destination as it was, and the script moves on. With a progress
+   * interval, long commands render how far along they are.
+   *
+   * @param model     to represent the game state
+   * @param view      to transmit output from the game
+   * @param userInput to field user input
+   * @param options   how to save images and read the script
+   */
+  public TextScriptedImageProcessingController(
+      ImageProcessingModel model,
+      TextScriptImageProcessingView view,
+      Readable userInput,
+      ScriptOptions options) {
     this.model = Objects.requireNonNull(model);
     this.view = Objects.requireNonNull(view);
     this.userInput = new Scanner(Objects.requireNonNull(userInput));
 
+    int saveThreads = options.getSaveThreads();
+    // a full queue makes the script wait, so queued images cannot pile up without bound
+    this.saveExecutor = saveThreads == 0 ? null : new ThreadPoolExecutor(
+        saveThreads, saveThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(4 * saveThreads),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    this.pendingSaves = new LinkedHashMap<>();
+    this.saveFailures = new ArrayList<>();
+
+    this.lookaheadTokens = options.getLookaheadTokens();
+    // leave a processor for the commands themselves
+    this.prefetchExecutor = this.lookaheadTokens == 0 ? null : Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    this.lookahead = new ArrayList<>();
+    this.scannedTokens = 0;
+    this.commandTimeoutMillis = options.getCommandTimeoutMillis();
+    this.progress = options.getProgressIntervalMillis() == 0 ? null
+        : this.view.progressListener(options.getProgressIntervalMillis());
+
     this.commandMap = new HashMap<String, Callable>();
     this.commandMap.put("load", (() -> (
-        this.model.loadImageFromFile(this.getFrom(), this.getTo()))));
+        this.model.loadImageFromFile(this.afterPendingSave(this.getFrom()), this.getTo()))));
+    this.commandMap.put("load-scaled", (() -> (
+        this.model.loadImageFromFile(this.afterPendingSave(this.getFrom()), this.getTo(),
+            this.getNextIntToken(), null))));
+    this.commandMap.put("load-region", (() -> (
+        this.model.loadImageFromFile(this.afterPendingSave(this.getFrom()), this.getTo(), 1,
+            new Rectangle(this.getNextIntToken(), this.getNextIntToken(),
+                this.getNextIntToken(), this.getNextIntToken())))));
     this.commandMap.put("save", (() -> (
-        this.view.saveImageToFile(this.model.image(this.getFrom()), this.getTo()))));
+        this.saveImage(this.getFrom(), this.getTo()))));
     this.commandMap.put("red-component", (() -> (
-                    this.model.doCommand(new RedComponent(), this.getFrom(), this.getTo()))));
+                    this.doCommand(new RedComponent(), this.getFrom(), this.getTo()))));
         //this.model.redComponent(this.getFrom(), this.getTo()))));
     this.commandMap.put("green-component", (() -> (
-        this.model.doCommand(new GreenComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new GreenComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("blue-component", (() -> (
-        this.model.doCommand(new BlueComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new BlueComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("value-component", (() -> (
-        this.model.doCommand(new ValueComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new ValueComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("intensity-component", (() -> (
-        this.model.doCommand(new IntensityComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new IntensityComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("luma-component", (() -> (
-        this.model.doCommand(new LumaComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new LumaComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("horizontal-flip", (() -> (
-        this.model.doCommand(new HorizontalFlipCommand(), this.getFrom(), this.getTo()))));
+        this.doCommand(new HorizontalFlipCommand(), this.getFrom(), this.getTo()))));
     this.commandMap.put("vertical-flip", (() -> (
-        this.model.doCommand(new VerticalFlipCommand(), this.getFrom(), this.getTo()))));
+        this.doCommand(new VerticalFlipCommand(), this.getFrom(), this.getTo()))));
     this.commandMap.put("brighten", (() -> (
-        this.model.doCommand(new BrightenComponent(this.getNextIntToken()), this.getFrom(), this.getTo()))));
+        this.doCommand(new BrightenComponent(this.getNextIntToken()), this.getFrom(),
+            this.getTo()))));
     this.commandMap.put("darken", (() -> (
-        this.model.doCommand(new DarkenComponent(this.getNextIntToken()), this.getFrom(), this.getTo()))));
+        this.doCommand(new DarkenComponent(this.getNextIntToken()), this.getFrom(),
+            this.getTo()))));
     this.commandMap.put("blur", (() -> (
-        this.model.doCommand(new BlurFilter(), this.getFrom(), this.getTo()))));
+        this.doCommand(new BlurFilter(), this.getFrom(), this.getTo()))));
     this.commandMap.put("sharpen", (() -> (
-        this.model.doCommand(new SharpenFilter(), this.getFrom(), this.getTo()))));
+        this.doCommand(new SharpenFilter(), this.getFrom(), this.getTo()))));
     this.commandMap.put("greyscale", (() -> (
-        this.model.doCommand(new GreyscaleComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new GreyscaleComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("sepia", (() -> (
-        this.model.doCommand(new GreyscaleComponent(), this.getFrom(), this.getTo()))));
+        this.doCommand(new GreyscaleComponent(), this.getFrom(), this.getTo()))));
     this.commandMap.put("downsize", (() -> (
-            this.model.doCommand(
+            this.doCommand(
                     new DownsizeCommand(this.getNextIntToken(), this.getNextIntToken()),
                     this.getFrom(), this.getTo()))));
   }
@@ -103,7 +222,9 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
    * Starts this image processor, reading from this.in and transmitting to this.view.
    *
    * <p>
-   * Accepts the following commands: > load IMAGE-PATH IMAGE-NAME > save IMAGE-NAME IMAGE-PATH >
+   * Accepts the following commands: > load IMAGE-PATH IMAGE-NAME > load-scaled IMAGE-PATH
+   * IMAGE-NAME FACTOR > load-region IMAGE-PATH IMAGE-NAME X Y WIDTH HEIGHT > save IMAGE-NAME
+   * IMAGE-PATH >
    * red-component IMAGE-NAME DEST-IMAGE-NAME > blue-component IMAGE-NAME DEST-IMAGE-NAME >
    * green-component IMAGE-NAME DEST-IMAGE-NAME > value-component IMAGE-NAME DEST-IMAGE-NAME >
    * intensity-component IMAGE-NAME DEST-IMAGE-NAME > luma-component IMAGE-NAME DEST-IMAGE-NAME >
@@ -119,67 +240,194 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
     this.view.renderMessage("WELCOME TO IMAGE PROCESSOR\n" +
         "Enter 'q' to quite. Enter 'help' for a list of commands\n");
 
-    this.process();
+    try {
+      this.process();
+    } finally {
+      try {
+        this.finishPendingSaves();
+      } finally {
+        if (this.saveExecutor != null) {
+          this.saveExecutor.shutdown();
+        }
+        if (this.prefetchExecutor != null) {
+          this.prefetchExecutor.shutdownNow();
+        }
+      }
+    }
   }
 
   /**
-   * Fields and parses inputs, then calls the associated command.
+   * Fields and parses inputs, then calls the associated command, one command at a time until the
+   * user quits. Commands are read from the input as they are needed and nothing is kept once a
+   * command is done, so arbitrarily long scripts run in constant stack and memory.
    *
    * @throws IOException if unable to field inputs
    */
   private void process() throws IOException {
-    String nextToken = this.getNextToken().toLowerCase().trim();
-
-    if (nextToken.equals("q") || nextToken.equals("quit")) {
-      // quit
-      this.view.renderMessage("Bye!\n");
-
-    } else if (nextToken.equals("h") || nextToken.equals("help")) {
-      // get help
-      this.view.renderMessage("Commands to try:\n" +
-          "   load IMAGE-PATH IMAGE-NAME\n" +
-          "   save IMAGE-NAME IMAGE-PATH\n" +
-          "   red-component IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   blue-component IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   green-component IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   value-component IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   intensity-component IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   luma-component IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   horizontal-flip IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   vertical-flip IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   brighten IMAGE-NAME DEST-IMAGE-NAME INCREMENT\n" +
-          "   darken IMAGE-NAME DEST-IMAGE-NAME INCREMENT\n" +
-          "   blur IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   sharpen IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   greyscale IMAGE-NAME DEST-IMAGE-NAME\n" +
-          "   sepia IMAGE-NAME DEST-IMAGE-NAME\n");
-      this.process();
+    while (true) {
+      // every command before this one is done, or its save is pending, so it is safe to prefetch
+      this.lookAhead();
+      String nextToken = this.getNextToken().toLowerCase().trim();
 
-    } else {
-      // parse command
-      try {
-        this.view.renderMessage("Attempting to do " + nextToken + ".\n");
-        if (commandMap.containsKey(nextToken)) {
-          commandMap.get(nextToken).call();
-          this.view.renderMessage("Success!\n");
-        } else {
-          this.view.renderMessage("Command " + nextToken + " not identified.\n");
+      if (nextToken.equals("q") || nextToken.equals("quit")) {
+        // quit
+        this.finishPendingSaves();
+        this.view.renderMessage("Bye!\n");
+        return;
+
+      } else if (nextToken.equals("h") || nextToken.equals("help")) {
+        // get help
+        this.view.renderMessage(HELP_MESSAGE);
+
+      } else {
+        // parse command
+        try {
+          this.view.renderMessage("Attempting to do " + nextToken + ".\n");
+          if (commandMap.containsKey(nextToken)) {
+            commandMap.get(nextToken).call();
+            this.view.renderMessage("Success!\n");
+          } else {
+            this.view.renderMessage("Command " + nextToken + " not identified.\n");
+          }
+
+        } catch (Exception e) {
+          // something went wrong with the command, or it was stopped
+          if (e instanceof IllegalArgumentException || e instanceof CancellationException) {
+            this.view.renderMessage(
+                TextScriptedImageProcessingController.errorMessage(e) + "\n");
+
+          } else { // a fatal exception
+            throw new IOException(e);
+          }
         }
-        this.process();
+      }
+    }
+  }
+
+  /**
+   * Gets the message rendered for a command that failed.
+   *
+   * @param e the exception the command failed with
+   * @return the message, without the exception's class name
+   */
+  static String errorMessage(Exception e) {
+    String error = e.toString();
+    return error.substring(error.indexOf("Exception:") + 10);
+  }
+
+  /**
+   * Runs a command on the model, stopping it if it runs longer than the command timeout, and
+   * rendering its progress if asked to.
+   *
+   * @param command   the command to run
+   * @param imageName the image to run the command on
+   * @param destName  the name to give the result
+   * @return null for use as a function object
+   * @throws IllegalArgumentException if the image does not exist
+   * @throws CancellationException    if the command ran longer than the timeout
+   */
+  private Void doCommand(Command command, String imageName, String destName)
+      throws IllegalArgumentException, CancellationException {
+    return this.model.doCommand(
+        CommandMonitor.monitored(command, this.commandTimeoutMillis, this.progress),
+        imageName, destName);
+  }
+
+  /**
+   * Saves the named image to the given file, either right away or, with save threads, by queueing
+   * it to be encoded in the background. Images never change once created, so the queued image is
+   * unaffected by later commands.
+   *
+   * @param imageName the name of the image to save
+   * @param filepath  the file to save the image to
+   * @return null for use as a function object
+   * @throws IllegalArgumentException if the image does not exist or unable to save it
+   * @throws IOException              if unable to save the image
+   */
+  private Void saveImage(String imageName, String filepath)
+      throws IllegalArgumentException, IOException {
+    Image image = this.model.image(imageName);
+    if (this.saveExecutor == null) {
+      return this.view.saveImageToFile(image, filepath);
+    }
 
+    // a later save to the same file must land after the earlier one
+    this.afterPendingSave(filepath);
+    // forget saves that already succeeded, keeping failures to report
+    this.pendingSaves.values().removeIf(pendingSave -> {
+      try {
+        return pendingSave.save.isDone() && pendingSave.save.get() == null;
       } catch (Exception e) {
-        // something went wrong with the command
-        if (e instanceof IllegalArgumentException) {
-          String error = e.toString();
-          this.view.renderMessage(
-              error.substring(error.indexOf("Exception:") + 10) + "\n");
-          this.process();
-
-        } else { // a fatal exception
-          throw new IOException(e);
-        }
+        return false;
+      }
+    });
+    this.pendingSaves.put(ScriptStep.canonicalPath(filepath), new PendingSave(filepath,
+        this.saveExecutor.submit(() -> this.view.saveImageToFile(image, filepath))));
+    return null;
+  }
+
+  /**
+   * Waits for any queued save to the given file to finish, so that it can be read or written again.
+   * A failed save is kept to be reported with the other saves before quitting.
+   *
+   * @param filepath the file about to be used
+   * @return the filepath
+   */
+  private String afterPendingSave(String filepath) {
+    String key = ScriptStep.canonicalPath(filepath);
+    PendingSave pendingSave = this.pendingSaves.get(key);
+    if (pendingSave != null) {
+      try {
+        pendingSave.save.get();
+      } catch (ExecutionException e) {
+        // a later save to the file replaces the pending one, so keep the failure apart
+        this.pendingSaves.remove(key);
+        this.saveFailures.add(
+            TextScriptedImageProcessingController.saveFailure(pendingSave.filepath, e));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return filepath;
+  }
+
+  /**
+   * Describes a failed save.
+   *
+   * @param filepath the file the image was saved to
+   * @param e        the failure
+   * @return the message to render
+   */
+  private static String saveFailure(String filepath, ExecutionException e) {
+    return "Unable to save " + filepath + ": " + e.getCause().getMessage() + "\n";
+  }
+
+  /**
+   * Waits for every queued save to finish, rendering a message for each one that failed.
+   *
+   * @throws IOException if unable to render a message
+   */
+  private void finishPendingSaves() throws IOException {
+    if (this.saveExecutor == null) {
+      return;
+    }
+
+    for (String failure : this.saveFailures) {
+      this.view.renderMessage(failure);
+    }
+    this.saveFailures.clear();
+    for (PendingSave pendingSave : this.pendingSaves.values()) {
+      try {
+        pendingSave.save.get();
+      } catch (ExecutionException e) {
+        this.view.renderMessage(
+            TextScriptedImageProcessingController.saveFailure(pendingSave.filepath, e));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while saving " + pendingSave.filepath + ".");
       }
     }
+    this.pendingSaves.clear();
   }
 
   /**
@@ -189,6 +437,10 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
    * @throws IOException if no next token
    */
   private String getNextToken() throws IOException {
+    if (!this.lookahead.isEmpty()) {
+      this.scannedTokens = Math.max(0, this.scannedTokens - 1);
+      return this.lookahead.remove(0).trim();
+    }
     try {
       return this.userInput.next().trim();
     } catch (Exception e) {
@@ -196,6 +448,59 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
     }
   }
 
+  /**
+   * Reads the script ahead of the command about to be run, up to the number of lookahead tokens,
+   * and starts decoding the files of the loads found among the newly read tokens. A file is not
+   * prefetched if an earlier token read ahead names it, since an earlier save may overwrite it, or
+   * if a save to it is still pending.
+   */
+  private void lookAhead() {
+    if (this.lookaheadTokens == 0) {
+      return;
+    }
+    while (this.lookahead.size() < this.lookaheadTokens && this.userInput.hasNext()) {
+      this.lookahead.add(this.userInput.next());
+    }
+
+    for (; this.scannedTokens < this.lookahead.size(); this.scannedTokens++) {
+      String token = this.lookahead.get(this.scannedTokens).toLowerCase().trim();
+      int argCount = token.equals("load") ? 2 : token.equals("load-scaled") ? 3
+          : token.equals("load-region") ? 6 : 0;
+      if (this.scannedTokens + argCount >= this.lookahead.size()) {
+        // the arguments have not been read yet, look at this token again next time
+        return;
+      }
+      if (argCount > 0) {
+        this.prefetch(token, this.lookahead.subList(
+            this.scannedTokens + 1, this.scannedTokens + 1 + argCount));
+      }
+    }
+  }
+
+  /**
+   * Starts decoding the file of a load command read ahead, if it is safe to do so.
+   *
+   * @param command the load command
+   * @param args    the arguments of the command
+   */
+  private void prefetch(String command, List<String> args) {
+    String filepath = args.get(0).trim();
+    if (this.pendingSaves.containsKey(ScriptStep.canonicalPath(filepath))
+        || this.lookahead.subList(0, this.scannedTokens).contains(args.get(0))) {
+      return;
+    }
+
+    try {
+      int subsampling = command.equals("load-scaled") ? Integer.parseInt(args.get(2)) : 1;
+      Rectangle region = !command.equals("load-region") ? null : new Rectangle(
+          Integer.parseInt(args.get(2)), Integer.parseInt(args.get(3)),
+          Integer.parseInt(args.get(4)), Integer.parseInt(args.get(5)));
+      this.model.prefetchImageFromFile(filepath, subsampling, region, this.prefetchExecutor);
+    } catch (NumberFormatException e) {
+      // the load will report its bad arguments when it is run
+    }
+  }
+
   /**
    * Fields the nextToken, and outputs it as a 'from' to the view.
    *
@@ -228,6 +533,17 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
    * @throws IOException              if no more tokens
    */
   private int getNextIntToken() throws IllegalArgumentException, IOException {
+    if (!this.lookahead.isEmpty()) {
+      int value;
+      try {
+        value = Integer.parseInt(this.lookahead.get(0).trim());
+      } catch (NumberFormatException e) {
+        // like the scanner, leave the token to be read as the next command
+        throw new IllegalArgumentException("First field must be an integer.");
+      }
+      this.getNextToken();
+      return value;
+    }
     try {
       return this.userInput.nextInt();
     } catch (Exception e) {
@@ -251,4 +567,24 @@ public class TextScriptedImageProcessingController implements ImageProcessingCon
       System.out.println(e);
     }
   }
+
+  /**
+   * A save queued in the background, with the path it was given.
+   */
+  private static class PendingSave {
+
+    private final String filepath;
+    private final Future<Void> save;
+
+    /**
+     * Instantiates this pending save.
+     *
+     * @param filepath the path of the file saved to, as given
+     * @param save     the save
+     */
+    PendingSave(String filepath, Future<Void> save) {
+      this.filepath = filepath;
+      this.save = save;
+    }
+  }
 }
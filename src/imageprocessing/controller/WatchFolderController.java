@@ -0,0 +1,227 @@
+package imageprocessing.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import imageprocessing.view.SaveOptions;
+
+/**
+ * The {@code WatchFolderController} watches a directory and runs one script on every image that
+ * appears in it, until stopped, so that a stream of files is processed by one running processor
+ * rather than by starting a new one for each. The script refers to the image through the same
+ * parameters as with {@link BatchScriptController}. Images already in the directory when the
+ * controller starts are processed first.
+ *
+ * <p>An image is processed once it has not changed for a short while, so that files still being
+ * copied in are not read half written, and again whenever it is changed later. When as many images
+ * as the in-flight limit are queued or being processed, the controller stops taking new ones until
+ * one is done; files that appear meanwhile are picked up afterwards.</p>
+ */
+public class WatchFolderController implements ImageProcessingController {
+
+  /**
+   * How long a file must go unchanged before it is processed.
+   */
+  private static final long QUIET_MILLIS = 200;
+
+  private final ImageScriptRunner runner;
+  private final File inputDir;
+  private final File outputDir;
+  private final int workerThreads;
+  private final int maxInFlight;
+  private volatile boolean stopped;
+  private volatile WatchService watcher;
+
+  /**
+   * Instantiates this controller with the given script, directories, output, and limits.
+   *
+   * @param script        the script to run on every image
+   * @param inputDir      the directory to watch for images
+   * @param outputDir     the directory to save results to, created if it does not exist
+   * @param out           to transmit a line per image
+   * @param workerThreads the number of images processed at the same time
+   * @param maxInFlight   the most images queued or being processed at once; at least the number of
+   *                      workers
+   * @throws IllegalArgumentException if workerThreads is not positive or maxInFlight is less than
+   *                                  workerThreads
+   */
+  public WatchFolderController(
+      Readable script,
+      String inputDir,
+      String outputDir,
+      Appendable out,
+      int workerThreads,
+      int maxInFlight) throws IllegalArgumentException {
+    this.inputDir = new File(Objects.requireNonNull(inputDir));
+    this.outputDir = new File(Objects.requireNonNull(outputDir));
+    this.runner = new ImageScriptRunner(script, this.outputDir, out, 0);
+    if (workerThreads < 1) {
+      throw new IllegalArgumentException("Number of worker threads must be positive.");
+    }
+    if (maxInFlight < workerThreads) {
+      throw new IllegalArgumentException(
+          "Number of images in flight cannot be less than the number of workers.");
+    }
+    this.workerThreads = workerThreads;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Watches the input directory, processing every image in it, until {@link #stop()} is called or
+   * the directory is removed. Images already being processed are finished before returning.
+   *
+   * @throws IOException              if unable to watch the directory or transmit output
+   * @throws IllegalArgumentException if the input directory does not exist, or the output
+   *                                  directory cannot be created
+   */
+  @Override
+  public void startProcessor() throws IOException, IllegalArgumentException {
+    if (!this.inputDir.isDirectory()) {
+      throw new IllegalArgumentException("Input directory " + this.inputDir + " does not exist.");
+    }
+    this.outputDir.mkdirs();
+    if (!this.outputDir.isDirectory()) {
+      throw new IllegalArgumentException(
+          "Unable to create output directory " + this.outputDir + ".");
+    }
+
+    Path dir = this.inputDir.toPath();
+    WatchService watcher = FileSystems.getDefault().newWatchService();
+    dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    this.watcher = watcher;
+    this.runner.transmit("Watching " + this.inputDir.getPath() + " with " + this.workerThreads
+        + " workers.\n");
+
+    // files seen changing, with when they last changed, and files processed, with their times
+    Map<Path, Long> changed = new LinkedHashMap<>();
+    Map<Path, Long> processed = new HashMap<>();
+    this.rescan(dir, changed);
+
+    SaveOptions saveOptions = new SaveOptions(this.workerThreads == 1
+        && Runtime.getRuntime().availableProcessors() > 1);
+    ExecutorService workers = Executors.newFixedThreadPool(this.workerThreads);
+    Semaphore inFlight = new Semaphore(this.maxInFlight);
+    AtomicInteger done = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    try {
+      while (!this.stopped) {
+        WatchKey key;
+        try {
+          key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ClosedWatchServiceException e) {
+          break;
+        }
+        if (key != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              this.rescan(dir, changed);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+              Path file = dir.resolve((Path) event.context());
+              changed.remove(file);
+              processed.remove(file);
+            } else {
+              changed.put(dir.resolve((Path) event.context()), System.nanoTime());
+            }
+          }
+          if (!key.reset()) {
+            if (this.stopped) {
+              break;
+            }
+            this.runner.transmit("Input directory " + this.inputDir + " is no longer available.\n");
+            break;
+          }
+        }
+
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> entries = changed.entrySet().iterator();
+        while (entries.hasNext() && !this.stopped) {
+          Map.Entry<Path, Long> entry = entries.next();
+          if (now - entry.getValue() < TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS)) {
+            continue;
+          }
+          entries.remove();
+          File input = entry.getKey().toFile();
+          Long lastModified = input.lastModified();
+          if (!input.isFile() || !ImageScriptRunner.isImage(input)
+              || lastModified.equals(processed.get(entry.getKey()))) {
+            continue;
+          }
+          processed.put(entry.getKey(), lastModified);
+
+          inFlight.acquire();
+          workers.execute(() -> {
+            try {
+              if (!this.runner.process(input, saveOptions, null)) {
+                failed.incrementAndGet();
+              }
+            } catch (IOException e) {
+              failed.incrementAndGet();
+            } finally {
+              done.incrementAndGet();
+              inFlight.release();
+            }
+          });
+        }
+      }
+      workers.shutdown();
+      workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while watching " + this.inputDir + ".");
+    } finally {
+      workers.shutdownNow();
+      watcher.close();
+    }
+
+    this.runner.transmit("Stopped watching " + this.inputDir.getPath() + " after processing "
+        + done.get() + " images (" + failed.get() + " failed).\n");
+  }
+
+  /**
+   * Stops watching the input directory. Images already taken are finished before
+   * {@link #startProcessor()} returns. Can be called from any thread.
+   */
+  public void stop() {
+    this.stopped = true;
+    WatchService watcher = this.watcher;
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (IOException e) {
+        // the processor notices it was stopped the next time it wakes
+      }
+    }
+  }
+
+  /**
+   * Marks every file in the directory as changed, for when changes may have been missed.
+   *
+   * @param dir     the directory
+   * @param changed the files seen changing, with when they last changed
+   */
+  private void rescan(Path dir, Map<Path, Long> changed) {
+    File[] files = dir.toFile().listFiles();
+    long now = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS);
+    for (File file : files == null ? new File[0] : files) {
+      changed.putIfAbsent(file.toPath(), now);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package imageprocessing.model;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -76,6 +77,22 @@ public class BasicImage implements Image {
     this(ImageReadUtil.readFile(filepath));
   }
 
+  /**
+   * Instantiates this BasePPMImage by loading only part of an image file at the given destination.
+   *
+   * @param filepath    the file location of the image to load from
+   * @param subsampling keep every subsampling-th row and column, 1 to keep all of them
+   * @param region      the area of the image to load, or null to load the whole image
+   * @throws IllegalArgumentException if the file is not found or is invalid, subsampling is not
+   *                                  positive, or the region lies outside of the image
+   * @throws NullPointerException     if null filepath
+   */
+  public BasicImage(String filepath, int subsampling, Rectangle region) throws
+      IllegalArgumentException,
+      NullPointerException {
+    this(ImageReadUtil.readFile(filepath, subsampling, region));
+  }
+
   /**
    * create a list of pixels.
    *
@@ -91,6 +108,38 @@ public class BasicImage implements Image {
     return pixels;
   }
 
+  @Override
+  public int width() {
+    return this.pixels.get(0).size();
+  }
+
+  @Override
+  public int height() {
+    return this.pixels.size();
+  }
+
+  /**
+   * create a list of pixels for a strip of consecutive rows.
+   *
+   * @param firstRow the index of the first row of the strip
+   * @param rowCount the number of rows in the strip
+   * @return a list of pixels of the rows in the strip
+   * @throws IllegalArgumentException if the strip is not inside of this image
+   */
+  @Override
+  public ArrayList<ArrayList<Pixel>> rows(int firstRow, int rowCount)
+      throws IllegalArgumentException {
+    if (firstRow < 0 || rowCount < 0 || firstRow + rowCount > this.pixels.size()) {
+      throw new IllegalArgumentException("Rows " + firstRow + " to " + (firstRow + rowCount)
+          + " are not inside of the image.");
+    }
+    ArrayList<ArrayList<Pixel>> rows = new ArrayList<>();
+    for (int i = firstRow; i < firstRow + rowCount; i++) {
+      rows.add(new ArrayList<>(this.pixels.get(i)));
+    }
+    return rows;
+  }
+
   /**
    * to make a histogram map.
    *
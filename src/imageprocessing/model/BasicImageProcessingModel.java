@@ -1,8 +1,15 @@
 package imageprocessing.model;
 
+import java.awt.Rectangle;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import imageprocessing.model.Commands.Command;
 
@@ -19,10 +26,70 @@ import imageprocessing.model.Commands.Command;
  */
 public class BasicImageProcessingModel implements ImageProcessingModel {
 
-  private final Map<String, Image> images;
+  /**
+   * Most prefetched images kept waiting to be loaded.
+   */
+  private static final int MAX_PREFETCHED = 16;
+
+  private final ImageStore images;
+  private final Map<String, PrefetchedImage> prefetched;
+  private final CommandResultCache results;
+  private final ImageContentIndex contents;
+  private final DecodedImageCache decoded;
 
   public BasicImageProcessingModel() {
-    this.images = new HashMap<String, Image>();
+    // scripts run as a plan use different images from different threads
+    this(Collections.synchronizedMap(new HashMap<String, Image>()));
+  }
+
+  /**
+   * Instantiates this model, keeping its images within the given memory budget. When the images
+   * come to more than the budget, the least recently used ones are set aside in files under the
+   * given directory, and read back when they are next used. An image made by a command may instead
+   * be dropped and made again from the image it was made from, when that is measured to be
+   * quicker. The memory an image uses is estimated from its number of pixels.
+   *
+   * @param memoryBudgetBytes the most memory the images kept in memory should use, in bytes
+   * @param spillDirectory    the directory to set images aside in, such as the temporary directory
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public BasicImageProcessingModel(long memoryBudgetBytes, File spillDirectory)
+      throws IllegalArgumentException {
+    this(new SpillingImageStore(memoryBudgetBytes, spillDirectory), null);
+  }
+
+  /**
+   * Instantiates this model, keeping its images in the given map.
+   *
+   * @param images the map to keep images in, by name, which must be empty
+   */
+  protected BasicImageProcessingModel(Map<String, Image> images) {
+    this(new MapImageStore(images), null);
+  }
+
+  /**
+   * Instantiates this model, keeping its images in the given store and the results of its commands
+   * in the given cache.
+   *
+   * @param images  the store to keep images in, by name, which must be empty
+   * @param results the cache of results of commands, or null to run every command
+   */
+  BasicImageProcessingModel(ImageStore images, CommandResultCache results) {
+    this.images = Objects.requireNonNull(images);
+    this.results = results;
+    this.contents = new ImageContentIndex();
+    this.decoded = new DecodedImageCache();
+    this.prefetched = new LinkedHashMap<String, PrefetchedImage>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PrefetchedImage> eldest) {
+        // a prefetch nobody loaded, drop it rather than hold its image forever
+        if (this.size() > MAX_PREFETCHED) {
+          eldest.getValue().image.cancel(false);
+          return true;
+        }
+        return false;
+      }
+    };
   }
 
   @Override
@@ -32,7 +99,20 @@ public class BasicImageProcessingModel implements ImageProcessingModel {
       throw new IllegalArgumentException("Given image name does not exist in this processor.");
     }
     try {
-      this.images.put(destName, command.execute(this.images.get(imageName)));
+      Image source = this.images.get(imageName);
+      String key = this.results == null ? null
+          : this.results.key(command, this.contents.hash(source));
+      Image result = key == null ? null : this.results.get(key, source);
+      long start = System.nanoTime();
+      if (result == null) {
+        result = this.intern(command.execute(source));
+        if (key != null) {
+          this.results.put(key, source, result);
+        }
+      }
+      // remember how the image was made, without the monitor following it this time
+      this.images.putDerived(destName, result, imageName, source, WatchedCommand.unwrap(command),
+          System.nanoTime() - start);
     } catch (Exception e) {
       throw e;
     }
@@ -51,10 +131,135 @@ public class BasicImageProcessingModel implements ImageProcessingModel {
   @Override
   public Void loadImageFromFile(String filepath, String imageName)
           throws IllegalArgumentException {
-    images.put(imageName, new BasicImage(filepath));
+    Image image = this.takePrefetched(filepath, 1, null);
+    images.put(imageName, this.intern(image != null ? image
+        : this.decoded.load(filepath, 1, null, () -> new BasicImage(filepath))));
+    return null;
+  }
+
+  /**
+   * Load part of the image from the specified filePath and assign it the given name. Only every
+   * subsampling-th row and column inside the given region is decoded. Overwrites the destination
+   * name if already taken.
+   *
+   * @param filepath    the file to load the image from
+   * @param imageName   the name to give the loaded image
+   * @param subsampling keep every subsampling-th row and column, 1 to keep all of them
+   * @param region      the area of the image to load, or null to load the whole image
+   * @return null object for use in Callable<> lambda
+   * @throws IllegalArgumentException if the file is invalid, subsampling is not positive, or the
+   *                                  region lies outside of the image
+   */
+  @Override
+  public Void loadImageFromFile(String filepath, String imageName, int subsampling,
+      Rectangle region) throws IllegalArgumentException {
+    Image image = this.takePrefetched(filepath, subsampling, region);
+    images.put(imageName, this.intern(image != null ? image
+        : this.decoded.load(filepath, subsampling, region,
+            () -> new BasicImage(filepath, subsampling, region))));
+    return null;
+  }
+
+  /**
+   * Shares the images this model decodes from files, in memory, with the other models sharing
+   * theirs, so that loading a file one of them loaded recently, and that has not changed since,
+   * gives back the image decoded then. This is only worth it for programs that load the same files
+   * again, such as the GUI; a model with a memory budget never shares its images.
+   *
+   * @param share whether to share decoded images
+   */
+  public void shareDecodedImages(boolean share) {
+    this.decoded.setKeepInMemory(share && this.images.sharesImages());
+  }
+
+  /**
+   * Keeps every image this model decodes from a file in the given directory too, as a raw raster,
+   * so that loading the same file again, in this run of the program or a later one, reads the
+   * raster instead of decoding the file. A file that has changed since is decoded again.
+   *
+   * @param directory the directory to keep decoded images in, or null to stop keeping them on disk
+   * @throws IllegalArgumentException if the directory cannot be made
+   */
+  public void cacheDecodedImagesIn(File directory) throws IllegalArgumentException {
+    this.decoded.setDirectory(directory);
+  }
+
+  @Override
+  public Void prefetchImageFromFile(String filepath, int subsampling, Rectangle region,
+      Executor executor) {
+    Objects.requireNonNull(filepath);
+    Objects.requireNonNull(executor);
+    String key = BasicImageProcessingModel.prefetchKey(filepath, subsampling, region);
+    File file = new File(filepath);
+    synchronized (this.prefetched) {
+      if (!this.prefetched.containsKey(key)) {
+        this.prefetched.put(key, new PrefetchedImage(file.lastModified(), file.length(),
+            CompletableFuture.supplyAsync(
+                () -> new BasicImage(filepath, subsampling, region), executor)));
+      }
+    }
     return null;
   }
 
+  /**
+   * Takes the prefetched image for the given file and arguments, waiting for it to be decoded.
+   *
+   * @param filepath    the file to load the image from
+   * @param subsampling keep every subsampling-th row and column
+   * @param region      the area of the image to load, or null for the whole image
+   * @return the decoded image, or null if it was not prefetched, failed to decode, or the file has
+   *         changed since, in which case the caller should read the file itself
+   */
+  private Image takePrefetched(String filepath, int subsampling, Rectangle region) {
+    PrefetchedImage prefetch;
+    synchronized (this.prefetched) {
+      if (this.prefetched.isEmpty()) {
+        return null;
+      }
+      prefetch = this.prefetched.remove(
+          BasicImageProcessingModel.prefetchKey(filepath, subsampling, region));
+    }
+    if (prefetch == null) {
+      return null;
+    }
+
+    File file = new File(filepath);
+    if (file.lastModified() != prefetch.lastModified || file.length() != prefetch.length) {
+      prefetch.image.cancel(false);
+      return null;
+    }
+    try {
+      return prefetch.image.join();
+    } catch (Exception e) {
+      // decoding again reports the failure the same way as an ordinary load
+      return null;
+    }
+  }
+
+  /**
+   * Gets the image already held with the same pixels as the given image, so that names given the
+   * same pixels share one image, if the store allows its images to be shared.
+   *
+   * @param image the image loaded or made
+   * @return the image to give the name
+   */
+  private Image intern(Image image) {
+    return this.images.sharesImages() ? this.contents.intern(image) : image;
+  }
+
+  /**
+   * Gets the key of a prefetched image.
+   *
+   * @param filepath    the file the image is loaded from
+   * @param subsampling the subsampling factor
+   * @param region      the region to load, or null for the whole image
+   * @return the key
+   */
+  private static String prefetchKey(String filepath, int subsampling, Rectangle region) {
+    return subsampling + " " + (region == null ? "all" : region.x + "," + region.y + ","
+        + region.width + "," + region.height) + " " + filepath;
+  }
+
   /**
    * Get the list of pixels from an image.
    *
@@ -64,11 +269,11 @@ public class BasicImageProcessingModel implements ImageProcessingModel {
    */
   @Override
   public Image image(String imageName) throws IllegalArgumentException {
-    try {
-      return images.get(imageName);
-    } catch (Exception e) {
+    Image image = images.get(imageName);
+    if (image == null) {
       throw new IllegalArgumentException("Given image name does not exist in this processor.");
     }
+    return image;
   }
 
   /**
@@ -88,4 +293,27 @@ public class BasicImageProcessingModel implements ImageProcessingModel {
       throw new IllegalArgumentException("Given image name does not exist in this processor.");
     }
   }
+
+  /**
+   * An image being decoded ahead of its load, with the state of its file when decoding started.
+   */
+  private static class PrefetchedImage {
+
+    private final long lastModified;
+    private final long length;
+    private final CompletableFuture<Image> image;
+
+    /**
+     * Instantiates this prefetched image.
+     *
+     * @param lastModified when the file was last modified
+     * @param length       the length of the file
+     * @param image        the image being decoded
+     */
+    PrefetchedImage(long lastModified, long length, CompletableFuture<Image> image) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.image = image;
+    }
+  }
 }
@@ -0,0 +1,239 @@
+package imageprocessing.model;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * A {@code CommandMonitor} follows a command as it runs, counting the rows of its image the
+ * command has reached, and can cancel it. A command is followed by running the command returned by
+ * {@link #watch(Command)} in its place, which hands the command a view of its image that tells this
+ * monitor whenever a row is first read. A cancelled command stops the next time it reaches a new
+ * row, by throwing a {@link CancellationException}, so that it never gives its destination a
+ * result.
+ *
+ * <p>A monitor may also have a deadline, after which the commands it follows stop as if they were
+ * cancelled. The progress, and an estimate of the time left, can be read from any thread while the
+ * command runs, or be pushed to a {@link ProgressListener} as it is made.</p>
+ */
+public class CommandMonitor {
+
+  private final long timeoutMillis;
+  private final long deadline;
+  private final ProgressListener listener;
+  private volatile boolean cancelled;
+  private volatile int rows;
+  private volatile int rowsDone;
+  private volatile long startNanos;
+  // only the thread running the command reads and writes the last percent reported
+  private int percentReported;
+
+  /**
+   * Instantiates this monitor, without a deadline.
+   */
+  public CommandMonitor() {
+    this(null);
+  }
+
+  /**
+   * Instantiates this monitor, without a deadline, telling the given listener how far along the
+   * commands it follows are.
+   *
+   * @param listener told of the progress, or null
+   */
+  public CommandMonitor(ProgressListener listener) {
+    this.timeoutMillis = 0;
+    this.deadline = 0;
+    this.listener = listener;
+  }
+
+  /**
+   * Instantiates this monitor with a deadline the given time from now. Every command it follows
+   * stops once the deadline has passed.
+   *
+   * @param timeoutMillis the time the commands followed have, in milliseconds
+   * @throws IllegalArgumentException if the time is not positive
+   */
+  public CommandMonitor(long timeoutMillis) throws IllegalArgumentException {
+    this(timeoutMillis, null);
+    if (timeoutMillis == 0) {
+      throw new IllegalArgumentException("Timeout must be positive.");
+    }
+  }
+
+  /**
+   * Instantiates this monitor with a deadline the given time from now, telling the given listener
+   * how far along the commands it follows are.
+   *
+   * @param timeoutMillis the time the commands followed have, in milliseconds, or 0 for no deadline
+   * @param listener      told of the progress, or null
+   * @throws IllegalArgumentException if the time is negative
+   */
+  public CommandMonitor(long timeoutMillis, ProgressListener listener)
+      throws IllegalArgumentException {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative.");
+    }
+    this.timeoutMillis = timeoutMillis;
+    this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.listener = listener;
+  }
+
+  /**
+   * Makes a command that runs the given command with a deadline, counted from when it starts each
+   * time it is run.
+   *
+   * @param command       the command to run
+   * @param timeoutMillis the time the command has, in milliseconds, or 0 for no deadline
+   * @return the command with a deadline
+   * @throws IllegalArgumentException if the time is negative
+   */
+  public static Command withTimeout(Command command, long timeoutMillis)
+      throws IllegalArgumentException {
+    return CommandMonitor.monitored(command, timeoutMillis, null);
+  }
+
+  /**
+   * Makes a command that runs the given command followed by a new monitor each time it is run, with
+   * a deadline counted from when it starts and a listener told how far along it is.
+   *
+   * @param command       the command to run
+   * @param timeoutMillis the time the command has, in milliseconds, or 0 for no deadline
+   * @param listener      told of the progress, or null
+   * @return the followed command, or the command itself if it has neither deadline nor listener
+   * @throws IllegalArgumentException if the time is negative
+   */
+  public static Command monitored(Command command, long timeoutMillis, ProgressListener listener)
+      throws IllegalArgumentException {
+    Objects.requireNonNull(command);
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative.");
+    }
+    if (timeoutMillis == 0 && listener == null) {
+      return command;
+    }
+    return new WatchedCommand(command, () -> new CommandMonitor(timeoutMillis, listener));
+  }
+
+  /**
+   * Makes a command that runs the given command while this monitor follows it.
+   *
+   * @param command the command to follow
+   * @return the followed command
+   */
+  public Command watch(Command command) {
+    Objects.requireNonNull(command);
+    return new WatchedCommand(command, () -> this);
+  }
+
+  /**
+   * Cancels the command followed by this monitor. Can be called from any thread, before or while
+   * the command runs.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Gets whether the command followed by this monitor was cancelled.
+   *
+   * @return whether it was cancelled
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Gets whether the deadline of this monitor has passed.
+   *
+   * @return whether it has passed, or false if there is no deadline
+   */
+  public boolean hasPassedDeadline() {
+    return this.timeoutMillis > 0 && System.nanoTime() - this.deadline > 0;
+  }
+
+  /**
+   * Gets the number of rows of the image the followed command works on.
+   *
+   * @return the number of rows, or 0 if the command has not started
+   */
+  public int rows() {
+    return this.rows;
+  }
+
+  /**
+   * Gets the number of rows of its image the followed command has reached.
+   *
+   * @return the number of rows reached
+   */
+  public int rowsDone() {
+    return this.rowsDone;
+  }
+
+  /**
+   * Estimates the time the followed command has left, from how long the rows it has reached took.
+   *
+   * @return the estimated time in milliseconds, or -1 if no row has been reached yet
+   */
+  public long remainingMillis() {
+    int done = this.rowsDone;
+    if (done == 0) {
+      return -1;
+    }
+    long elapsedNanos = System.nanoTime() - this.startNanos;
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos / done * (this.rows - done));
+  }
+
+  /**
+   * Notes that a command has started on an image.
+   *
+   * @param rows the number of rows of the image
+   * @throws CancellationException if the command was cancelled or its deadline has passed
+   */
+  void started(int rows) throws CancellationException {
+    this.startNanos = System.nanoTime();
+    this.rowsDone = 0;
+    this.rows = rows;
+    this.checkCancelled();
+    if (this.listener != null) {
+      this.percentReported = 0;
+      this.listener.progressed(0, rows, -1);
+    }
+  }
+
+  /**
+   * Notes that the command has reached another row of its image for the first time.
+   *
+   * @throws CancellationException if the command was cancelled or its deadline has passed
+   */
+  void rowReached() throws CancellationException {
+    // only the thread running the command writes the count
+    int done = Math.min(this.rowsDone + 1, this.rows);
+    this.rowsDone = done;
+    this.checkCancelled();
+    if (this.listener != null) {
+      int percent = (int) (100L * done / this.rows);
+      if (percent > this.percentReported) {
+        this.percentReported = percent;
+        this.listener.progressed(done, this.rows, this.remainingMillis());
+      }
+    }
+  }
+
+  /**
+   * Stops the command if it was cancelled or its deadline has passed.
+   *
+   * @throws CancellationException if the command was cancelled or its deadline has passed
+   */
+  private void checkCancelled() throws CancellationException {
+    if (this.cancelled) {
+      throw new CancellationException("Cancelled.");
+    }
+    if (this.hasPassedDeadline()) {
+      throw new CancellationException(
+          "Stopped after running longer than " + this.timeoutMillis + " ms.");
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package imageprocessing.model;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * A {@code CommandResultCache} remembers the images made by commands, so that running a command
+ * again on an image with the same pixels gives back the image it made before instead of making it
+ * again. A result is found by the content hash of the image the command ran on, the class of the
+ * command and the values of its parameters, so it is found whatever the images are named. Since
+ * different images can share a hash, a result is only given back once the image it is asked for
+ * is found to have the same pixels as the image it was made from, which is not kept alive for
+ * it.
+ *
+ * <p>Only commands whose parameters are all final fields holding plain values, such as numbers,
+ * strings and enums, are remembered; other commands, such as lambdas, might behave differently
+ * each time and are always run. The least recently used results are forgotten once the results
+ * remembered come to more than the size of the cache, estimated from their number of pixels.</p>
+ */
+class CommandResultCache {
+
+  /**
+   * The parameters of each class of command seen, or none for commands that are not remembered.
+   */
+  private static final Map<Class<?>, Optional<List<Field>>> PARAMETERS =
+      new ConcurrentHashMap<>();
+
+  private final long maxBytes;
+  private final LinkedHashMap<String, Result> results;
+  private long bytes;
+
+  /**
+   * Instantiates this cache.
+   *
+   * @param maxBytes the most memory the remembered results should use, in bytes
+   * @throws IllegalArgumentException if the size is not positive
+   */
+  CommandResultCache(long maxBytes) throws IllegalArgumentException {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Result cache size must be positive.");
+    }
+    this.maxBytes = maxBytes;
+    this.results = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Gets the key a command's result on an image is remembered by.
+   *
+   * @param command    the command
+   * @param sourceHash the content hash of the image the command runs on
+   * @return the key, or null if the command's results are not remembered
+   */
+  String key(Command command, long sourceHash) {
+    // a followed command makes the same image as the command it follows
+    command = WatchedCommand.unwrap(command);
+    Optional<List<Field>> parameters =
+        PARAMETERS.computeIfAbsent(command.getClass(), CommandResultCache::parameters);
+    if (parameters.isEmpty()) {
+      return null;
+    }
+
+    StringBuilder key = new StringBuilder();
+    key.append(Long.toHexString(sourceHash)).append(' ').append(command.getClass().getName());
+    try {
+      for (Field parameter : parameters.get()) {
+        key.append(' ').append(parameter.get(command));
+      }
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+    return key.toString();
+  }
+
+  /**
+   * Gets a remembered result, if it was made from an image with the same pixels as the given one.
+   *
+   * @param key    the key of the result
+   * @param source the image the command is to run on
+   * @return the result, or null if it is not remembered, or was made from an image with the same
+   *         hash but other pixels, or from an image no longer kept anywhere
+   */
+  Image get(String key, Image source) {
+    Result remembered;
+    synchronized (this) {
+      remembered = this.results.get(key);
+    }
+    if (remembered == null) {
+      return null;
+    }
+    // compared outside the lock, since comparing pixels takes as long as hashing them
+    Image madeFrom = remembered.source.get();
+    if (madeFrom == source
+        || madeFrom != null && ImageHashUtil.samePixels(madeFrom, source)) {
+      return remembered.image;
+    }
+    return null;
+  }
+
+  /**
+   * Remembers a result, forgetting the least recently used results if there is not enough room.
+   * A result larger than the whole cache is not remembered.
+   *
+   * @param key    the key of the result
+   * @param source the image the command ran on
+   * @param result the image the command made
+   */
+  synchronized void put(String key, Image source, Image result) {
+    long size = CommandResultCache.size(result);
+    if (size > this.maxBytes) {
+      return;
+    }
+    Result old = this.results.put(key, new Result(source, result));
+    if (old != null) {
+      this.bytes -= CommandResultCache.size(old.image);
+    }
+    this.bytes += size;
+
+    Iterator<Result> eldest = this.results.values().iterator();
+    while (this.bytes > this.maxBytes) {
+      this.bytes -= CommandResultCache.size(eldest.next().image);
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Gets the number of results remembered.
+   *
+   * @return the number of results
+   */
+  synchronized int size() {
+    return this.results.size();
+  }
+
+  /**
+   * Gets the estimated memory an image uses.
+   *
+   * @param image the image
+   * @return the memory, in bytes
+   */
+  private static long size(Image image) {
+    return (long) image.width() * image.height() * SpillingImageStore.PIXEL_BYTES;
+  }
+
+  /**
+   * Finds the parameters of a class of command: every instance field of it and the classes it
+   * extends.
+   *
+   * @param type the class of command
+   * @return the parameters, or none if a parameter is not a final field holding a plain value, or
+   *         the class is made by the compiler
+   */
+  private static Optional<List<Field>> parameters(Class<?> type) {
+    if (type.isSynthetic() || type.isAnonymousClass() || type.isLocalClass()) {
+      return Optional.empty();
+    }
+    List<Field> parameters = new ArrayList<>();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        if (!Modifier.isFinal(field.getModifiers())
+            || !CommandResultCache.isPlain(field.getType())) {
+          return Optional.empty();
+        }
+        try {
+          field.setAccessible(true);
+        } catch (RuntimeException e) {
+          return Optional.empty();
+        }
+        parameters.add(field);
+      }
+    }
+    return Optional.of(parameters);
+  }
+
+  /**
+   * Gets whether values of a type are plain values, whose text says all there is to them.
+   *
+   * @param type the type
+   * @return whether it is plain
+   */
+  private static boolean isPlain(Class<?> type) {
+    return type.isPrimitive() || type.isEnum() || type == String.class
+        || Number.class.isAssignableFrom(type) && type.getName().startsWith("java.lang.")
+        || type == Boolean.class || type == Character.class;
+  }
+
+  /**
+   * A remembered result, with the image it was made from.
+   */
+  private static class Result {
+
+    private final WeakReference<Image> source;
+    private final Image image;
+
+    /**
+     * Instantiates this result.
+     *
+     * @param source the image the command ran on
+     * @param image  the image the command made
+     */
+    Result(Image source, Image image) {
+      this.source = new WeakReference<>(source);
+      this.image = image;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package imageprocessing.model;
+
+import java.awt.Rectangle;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * The {@code ConcurrentImageProcessingModel} is an image processor that can be shared by threads,
+ * such as the Swing event thread, background workers, and a server, with commands on different
+ * images running at the same time.
+ *
+ * <p>Images are kept in a concurrent map, and giving a name a new image replaces the old one in a
+ * single step, so that a thread reading an image always sees a whole image. Loads and commands
+ * writing the same name take turns, in the order they were started, so that a command reading and
+ * writing the same image is not overwritten halfway by another. A command reads the image it works
+ * on when it starts; commands on other names are not held up by it. Loads and commands run
+ * asynchronously complete with the image they made, even if another thread writes the name right
+ * after.</p>
+ */
+public class ConcurrentImageProcessingModel extends BasicImageProcessingModel {
+
+  private final Map<String, ReentrantLock> locks;
+
+  /**
+   * Instantiates this model, with no images.
+   */
+  public ConcurrentImageProcessingModel() {
+    super(new ConcurrentHashMap<>());
+    this.locks = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Instantiates this model, with no images, remembering the images its commands make. Running a
+   * command again on an image with the same pixels, under any name, gives back the image it made
+   * before rather than making it again. The least recently used results are forgotten once they
+   * come to more than the given size, estimated from their number of pixels.
+   *
+   * @param resultCacheBytes the most memory the remembered results should use, in bytes
+   * @throws IllegalArgumentException if the size is not positive
+   */
+  public ConcurrentImageProcessingModel(long resultCacheBytes) throws IllegalArgumentException {
+    super(new MapImageStore(new ConcurrentHashMap<>()), new CommandResultCache(resultCacheBytes));
+    this.locks = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public Void doCommand(Command command, String imageName, String destName)
+      throws IllegalArgumentException {
+    ReentrantLock lock = this.lock(destName);
+    lock.lock();
+    try {
+      return super.doCommand(command, imageName, destName);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Void loadImageFromFile(String filepath, String imageName)
+      throws IllegalArgumentException {
+    ReentrantLock lock = this.lock(imageName);
+    lock.lock();
+    try {
+      return super.loadImageFromFile(filepath, imageName);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Void loadImageFromFile(String filepath, String imageName, int subsampling,
+      Rectangle region) throws IllegalArgumentException {
+    ReentrantLock lock = this.lock(imageName);
+    lock.lock();
+    try {
+      return super.loadImageFromFile(filepath, imageName, subsampling, region);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public CompletableFuture<Image> doCommandAsync(Command command, String imageName,
+      String destName, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> this.whileLocked(destName, () -> {
+      this.doCommand(command, imageName, destName);
+      return this.image(destName);
+    }), executor);
+  }
+
+  @Override
+  public CompletableFuture<Image> loadImageFromFileAsync(String filepath, String imageName,
+      Executor executor) {
+    return CompletableFuture.supplyAsync(() -> this.whileLocked(imageName, () -> {
+      this.loadImageFromFile(filepath, imageName);
+      return this.image(imageName);
+    }), executor);
+  }
+
+  @Override
+  public CompletableFuture<Image> loadImageFromFileAsync(String filepath, String imageName,
+      int subsampling, Rectangle region, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> this.whileLocked(imageName, () -> {
+      this.loadImageFromFile(filepath, imageName, subsampling, region);
+      return this.image(imageName);
+    }), executor);
+  }
+
+  @Override
+  public Image image(String imageName) throws IllegalArgumentException {
+    if (imageName == null) {
+      throw new IllegalArgumentException("Given image name does not exist in this processor.");
+    }
+    return super.image(imageName);
+  }
+
+  /**
+   * Writes an image and reads it back while holding its lock, so that no other thread writes it in
+   * between.
+   *
+   * @param imageName the name of the image
+   * @param write     writes the image and reads it back
+   * @return the image written
+   * @throws IllegalArgumentException if the name is null or writing fails
+   */
+  private Image whileLocked(String imageName, Supplier<Image> write)
+      throws IllegalArgumentException {
+    ReentrantLock lock = this.lock(imageName);
+    lock.lock();
+    try {
+      return write.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the lock taken to write an image, making it the first time the name is written.
+   *
+   * @param imageName the name of the image
+   * @return the lock, handed out in the order it was asked for
+   * @throws IllegalArgumentException if the name is null
+   */
+  private ReentrantLock lock(String imageName) throws IllegalArgumentException {
+    if (imageName == null) {
+      throw new IllegalArgumentException("Image name cannot be null.");
+    }
+    return this.locks.computeIfAbsent(imageName, name -> new ReentrantLock(true));
+  }
+}
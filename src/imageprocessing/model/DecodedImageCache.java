@@ -0,0 +1,231 @@
+package imageprocessing.model;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@code DecodedImageCache} keeps the images decoded from files, so that loading a file again
+ * gives back the image decoded before instead of decoding it again. An image is found by the
+ * canonical path of its file, the file's size and last modified time, and the part of the file
+ * loaded, so a file that has changed is decoded again. Images do not change once decoded, so one
+ * image can be handed to every load.
+ *
+ * <p>A cache only keeps images in memory once asked to, since that is only worth it for programs
+ * that load the same files again. The images kept in memory are shared by every cache that keeps
+ * them, so that the models made for each script find the images decoded by the others. The least
+ * recently used are forgotten once they come to more than {@link #MAX_BYTES}, estimated from their
+ * number of pixels. A cache may also be given a directory, in which
+ * it writes every image it decodes as a raw raster (see {@link RasterFileUtil}), so that later
+ * runs of the program read the raster, which is much quicker than decoding a compressed file. The
+ * directory is never cleaned by the cache, and can be emptied at any time.</p>
+ */
+class DecodedImageCache {
+
+  /**
+   * The most memory the images kept in memory should use, in bytes.
+   */
+  static final long MAX_BYTES = 64L << 20;
+
+  // in the order the images were last loaded, least recently loaded first
+  private static final LinkedHashMap<String, Image> IMAGES =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private static long bytes;
+
+  private volatile boolean keepInMemory;
+  private volatile File directory;
+
+  /**
+   * Sets whether the images decoded are kept in memory, shared with the other caches that keep
+   * them, and looked for there.
+   *
+   * @param keepInMemory whether to keep images in memory; false for models that must be able to
+   *                     let go of the images they load
+   */
+  void setKeepInMemory(boolean keepInMemory) {
+    this.keepInMemory = keepInMemory;
+  }
+
+  /**
+   * Sets the directory the decoded images are written to and read back from, making it if it does
+   * not exist.
+   *
+   * @param directory the directory, or null to keep images in memory only
+   * @throws IllegalArgumentException if the directory cannot be made
+   */
+  void setDirectory(File directory) throws IllegalArgumentException {
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IllegalArgumentException("Unable to make the decoded image cache directory "
+          + directory + ".");
+    }
+    this.directory = directory;
+  }
+
+  /**
+   * Loads an image, giving back the image decoded before from the same file if there is one.
+   *
+   * @param filepath    the file to load the image from
+   * @param subsampling keep every subsampling-th row and column
+   * @param region      the area of the image to load, or null for the whole image
+   * @param decode      decodes the image from the file, if it was not decoded before
+   * @return the image
+   * @throws IllegalArgumentException if the image has to be decoded and decoding fails
+   */
+  Image load(String filepath, int subsampling, Rectangle region, Supplier<Image> decode)
+      throws IllegalArgumentException {
+    File directory = this.directory;
+    boolean keepInMemory = this.keepInMemory;
+    if (!keepInMemory && directory == null) {
+      return decode.get();
+    }
+    String key = DecodedImageCache.key(filepath, subsampling, region);
+    if (key == null) {
+      // decoding reports a missing file the same way as an ordinary load
+      return decode.get();
+    }
+    if (keepInMemory) {
+      synchronized (IMAGES) {
+        Image image = IMAGES.get(key);
+        if (image != null) {
+          return image;
+        }
+      }
+    }
+
+    File raster = directory == null ? null
+        : new File(directory, DecodedImageCache.fileName(key));
+    Image image = null;
+    if (raster != null && raster.isFile()) {
+      try {
+        image = RasterFileUtil.read(raster);
+      } catch (IOException e) {
+        // a raster cut short or from another version, decode the file again
+      }
+    }
+    if (image == null) {
+      image = decode.get();
+      if (raster != null && RasterFileUtil.canWrite(image)) {
+        DecodedImageCache.write(image, raster);
+      }
+    }
+    if (keepInMemory) {
+      DecodedImageCache.remember(key, image);
+    }
+    return image;
+  }
+
+  /**
+   * Keeps an image, forgetting the least recently loaded images if there is not enough room. An
+   * image larger than the whole cache is not kept.
+   *
+   * @param key   the key of the image
+   * @param image the image
+   */
+  private static void remember(String key, Image image) {
+    long size = DecodedImageCache.size(image);
+    if (size > MAX_BYTES) {
+      return;
+    }
+    synchronized (IMAGES) {
+      Image old = IMAGES.put(key, image);
+      if (old != null) {
+        bytes -= DecodedImageCache.size(old);
+      }
+      bytes += size;
+
+      Iterator<Image> eldest = IMAGES.values().iterator();
+      while (bytes > MAX_BYTES) {
+        bytes -= DecodedImageCache.size(eldest.next());
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * Writes an image to its raster in the cache directory. The raster is written under another name
+   * and then renamed, so that no other load, in this program or another, reads it half written.
+   * Failing to write it only means the file is decoded again next time.
+   *
+   * @param image  the image
+   * @param raster the raster file
+   */
+  private static void write(Image image, File raster) {
+    File partial = null;
+    try {
+      partial = File.createTempFile("decoding-", ".part", raster.getParentFile());
+      RasterFileUtil.write(image, partial);
+      Files.move(partial.toPath(), raster.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      if (partial != null) {
+        partial.delete();
+      }
+    }
+  }
+
+  /**
+   * Gets the key of an image loaded from a file.
+   *
+   * @param filepath    the file the image is loaded from
+   * @param subsampling the subsampling factor
+   * @param region      the region to load, or null for the whole image
+   * @return the key, or null if the file cannot be read
+   */
+  private static String key(String filepath, int subsampling, Rectangle region) {
+    try {
+      Path path = new File(filepath).getCanonicalFile().toPath();
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      if (!attributes.isRegularFile()) {
+        return null;
+      }
+      return path + "\n" + attributes.size() + "\n"
+          + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + "\n" + subsampling + "\n"
+          + (region == null ? "all" : region.x + "," + region.y + "," + region.width + ","
+          + region.height);
+    } catch (IOException | SecurityException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the name of the raster an image is written to in the cache directory, a digest of its key
+   * so that a file that has changed is written to another raster.
+   *
+   * @param key the key of the image
+   * @return the name of the raster
+   */
+  private static String fileName(String key) {
+    try {
+      StringBuilder name = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(
+          key.getBytes(StandardCharsets.UTF_8))) {
+        name.append(String.format("%02x", b));
+      }
+      return name.append(".raster").toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Gets the estimated memory an image uses.
+   *
+   * @param image the image
+   * @return the memory, in bytes
+   */
+  private static long size(Image image) {
+    return (long) image.width() * image.height() * SpillingImageStore.PIXEL_BYTES;
+  }
+}
@@ -20,6 +20,31 @@ public interface Image {
   ArrayList<ArrayList<Pixel>> pixels()
       throws IllegalArgumentException;
 
+  /**
+   * Get the width of this image in pixels.
+   *
+   * @return the number of pixels in each row
+   */
+  int width();
+
+  /**
+   * Get the height of this image in pixels.
+   *
+   * @return the number of rows
+   */
+  int height();
+
+  /**
+   * Create a list of pixels for a strip of consecutive rows, without copying the rest of the image.
+   *
+   * @param firstRow the index of the first row of the strip
+   * @param rowCount the number of rows in the strip
+   * @return a list of pixels of the rows in the strip
+   * @throws IllegalArgumentException if the strip is not inside of this image
+   */
+  ArrayList<ArrayList<Pixel>> rows(int firstRow, int rowCount)
+      throws IllegalArgumentException;
+
   /**
    * To make a histogram map.
    *
@@ -0,0 +1,106 @@
+package imageprocessing.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An {@code ImageContentIndex} knows the content hash of every image a model has loaded or made,
+ * and finds an image already known with the same pixels as a new one, so that names given images
+ * with the same pixels can share one image rather than each keep a copy.
+ *
+ * <p>The index does not keep the images it knows alive: an image no name holds any more is
+ * forgotten once it is collected.</p>
+ */
+class ImageContentIndex {
+
+  // images do not change, so the hash of each is worked out once
+  private final Map<Image, Long> hashes;
+  private final Map<Long, HashedReference> images;
+  private final ReferenceQueue<Image> collected;
+
+  /**
+   * Instantiates this index, knowing no images.
+   */
+  ImageContentIndex() {
+    this.hashes = new WeakHashMap<>();
+    this.images = new HashMap<>();
+    this.collected = new ReferenceQueue<>();
+  }
+
+  /**
+   * Gets the content hash of an image, working it out the first time the image is seen.
+   *
+   * @param image the image
+   * @return the hash
+   */
+  long hash(Image image) {
+    synchronized (this) {
+      Long hash = this.hashes.get(image);
+      if (hash != null) {
+        return hash;
+      }
+    }
+    // hashing reads every pixel, so other threads are not held up by it
+    long hash = ImageHashUtil.contentHash(image);
+    synchronized (this) {
+      this.hashes.put(image, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Gets the image known with the same pixels as the given image, or starts knowing the given
+   * image if there is none.
+   *
+   * @param image the image
+   * @return the image already known with the same pixels, or the given image
+   */
+  Image intern(Image image) {
+    long hash = this.hash(image);
+    Image known;
+    synchronized (this) {
+      this.forgetCollected();
+      HashedReference reference = this.images.get(hash);
+      known = reference == null ? null : reference.get();
+      if (known == null) {
+        this.images.put(hash, new HashedReference(image, hash, this.collected));
+        return image;
+      }
+    }
+    // two images whose hashes match almost surely have the same pixels, but make sure
+    return known == image || ImageHashUtil.samePixels(known, image) ? known : image;
+  }
+
+  /**
+   * Forgets the images that have been collected.
+   */
+  private void forgetCollected() {
+    HashedReference reference;
+    while ((reference = (HashedReference) this.collected.poll()) != null) {
+      this.images.remove(reference.hash, reference);
+    }
+  }
+
+  /**
+   * A reference to an image that does not keep it alive, with the image's hash.
+   */
+  private static class HashedReference extends WeakReference<Image> {
+
+    private final long hash;
+
+    /**
+     * Instantiates this reference.
+     *
+     * @param image     the image
+     * @param hash      the hash of the image
+     * @param collected the queue told when the image is collected
+     */
+    HashedReference(Image image, long hash, ReferenceQueue<Image> collected) {
+      super(image, collected);
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package imageprocessing.model;
+
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code ImageHashUtil} contains utility methods to hash the content of an image: its size,
+ * its max value and the value of every pixel, so that images with the same pixels hash the same
+ * whatever they are named or however they were made. The hash is 64 bits wide, making it very
+ * unlikely that two different images share one.
+ *
+ * <p>An image is hashed a row at a time, reading each row straight from the image rather than
+ * copying all its pixels, and the rows of a large image are hashed on several threads at once,
+ * then combined in order.</p>
+ */
+class ImageHashUtil {
+
+  private static final long PRIME = 0x100000001b3L;
+
+  /**
+   * Fewest pixels an image must have for its rows to be hashed on several threads.
+   */
+  private static final long PARALLEL_PIXELS = 1 << 16;
+
+  /**
+   * Hashes the content of an image.
+   *
+   * @param image the image to hash
+   * @return the hash
+   */
+  static long contentHash(Image image) {
+    long hash = ImageHashUtil.mix(0xcbf29ce484222325L, image.width());
+    hash = ImageHashUtil.mix(hash, image.height());
+    IntStream rows = IntStream.range(0, image.height());
+    if ((long) image.width() * image.height() >= PARALLEL_PIXELS) {
+      rows = rows.parallel();
+    }
+    for (long rowHash : rows.mapToLong(y -> ImageHashUtil.rowHash(image, y)).toArray()) {
+      hash = ImageHashUtil.mix(hash, rowHash);
+    }
+    return ImageHashUtil.finish(hash);
+  }
+
+  /**
+   * Gets whether two images are of the same kind, with the same size and the same pixels.
+   *
+   * @param first  an image
+   * @param second another image
+   * @return whether their pixels are the same
+   */
+  static boolean samePixels(Image first, Image second) {
+    if (first.getClass() != second.getClass() || first.width() != second.width()
+        || first.height() != second.height()) {
+      return false;
+    }
+    IntStream rows = IntStream.range(0, first.height());
+    if ((long) first.width() * first.height() >= PARALLEL_PIXELS) {
+      rows = rows.parallel();
+    }
+    return rows.allMatch(y -> ImageHashUtil.sameRow(first.rows(y, 1).get(0),
+        second.rows(y, 1).get(0)));
+  }
+
+  /**
+   * Hashes the pixels of one row of an image, with their max value.
+   *
+   * @param image the image
+   * @param y     the index of the row
+   * @return the hash of the row
+   */
+  static long rowHash(Image image, int y) {
+    long hash = y;
+    for (Pixel pixel : image.rows(y, 1).get(0)) {
+      int maxValue = pixel.byteSize();
+      hash = ImageHashUtil.mix(hash, maxValue);
+      if (maxValue <= 255) {
+        // the packed value holds every channel whole
+        hash = ImageHashUtil.mix(hash, pixel.intRGB());
+      } else {
+        for (String component : pixel.toString().split(" ")) {
+          hash = ImageHashUtil.mix(hash, Integer.parseInt(component));
+        }
+      }
+    }
+    return ImageHashUtil.finish(hash);
+  }
+
+  /**
+   * Gets whether two rows of pixels are the same, pixels of the same kind with the same values.
+   *
+   * @param first  a row
+   * @param second another row of the same length
+   * @return whether their pixels are the same
+   */
+  private static boolean sameRow(ArrayList<Pixel> first, ArrayList<Pixel> second) {
+    for (int x = 0; x < first.size(); x++) {
+      Pixel a = first.get(x);
+      Pixel b = second.get(x);
+      if (a.getClass() != b.getClass() || a.byteSize() != b.byteSize()) {
+        return false;
+      }
+      boolean same = a.byteSize() <= 255
+          ? a.intRGB() == b.intRGB()
+          : a.toString().equals(b.toString());
+      if (!same) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a value to a hash.
+   *
+   * @param hash  the hash so far
+   * @param value the value to add
+   * @return the new hash
+   */
+  private static long mix(long hash, long value) {
+    return (hash ^ value) * PRIME;
+  }
+
+  /**
+   * Spreads the bits of a hash, so that values differing in few bits hash far apart.
+   *
+   * @param hash the hash
+   * @return the spread hash
+   */
+  private static long finish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9a34fe8bb53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
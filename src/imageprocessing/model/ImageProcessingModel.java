@@ -1,7 +1,10 @@
 package imageprocessing.model;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import imageprocessing.model.Commands.Command;
 
@@ -28,6 +31,93 @@ public interface ImageProcessingModel {
    */
   Void loadImageFromFile(String filepath, String imageName) throws IllegalArgumentException;
 
+  /**
+   * Load part of the image from the specified filePath and assign it the given name. Only every
+   * subsampling-th row and column inside the given region is decoded. Overwrites the destination
+   * name if already taken.
+   *
+   * @param filepath    the location to load the image from
+   * @param imageName   the name to load the image to
+   * @param subsampling keep every subsampling-th row and column, 1 to keep all of them
+   * @param region      the area of the image to load, or null to load the whole image
+   * @return null for use in Callable<> lambda expression
+   * @throws IllegalArgumentException if the filePath is invalid, subsampling is not positive, or
+   *                                  the region lies outside of the image
+   */
+  Void loadImageFromFile(String filepath, String imageName, int subsampling, Rectangle region)
+      throws IllegalArgumentException;
+
+  /**
+   * Starts decoding part of the image at the specified filePath on the given executor, so that a
+   * later call to loadImageFromFile with the same file and arguments can use the decoded image
+   * instead of reading the file. Does nothing to the images held by this model.
+   *
+   * @param filepath    the location to load the image from
+   * @param subsampling keep every subsampling-th row and column, 1 to keep all of them
+   * @param region      the area of the image to load, or null to load the whole image
+   * @param executor    the executor to decode the image on
+   * @return null for use in Callable<> lambda expression
+   */
+  Void prefetchImageFromFile(String filepath, int subsampling, Rectangle region,
+      Executor executor);
+
+  /**
+   * Runs a command on the given executor, giving the result the destination name, so that the
+   * caller is not held up while it runs. Calls can be chained to run several steps in turn.
+   *
+   * @param command   the command to run
+   * @param imageName the name of the image to run the command on
+   * @param destName  the name to give the result
+   * @param executor  the executor to run the command on
+   * @return the result, completed exceptionally with an IllegalArgumentException if the image does
+   *         not exist
+   */
+  default CompletableFuture<Image> doCommandAsync(Command command, String imageName,
+      String destName, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      this.doCommand(command, imageName, destName);
+      return this.image(destName);
+    }, executor);
+  }
+
+  /**
+   * Loads an image from file on the given executor, giving it the given name, so that the caller
+   * is not held up while it is decoded.
+   *
+   * @param filepath  the location to load the image from
+   * @param imageName the name to load the image to
+   * @param executor  the executor to decode the image on
+   * @return the loaded image, completed exceptionally with an IllegalArgumentException if the
+   *         filepath is invalid
+   */
+  default CompletableFuture<Image> loadImageFromFileAsync(String filepath, String imageName,
+      Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      this.loadImageFromFile(filepath, imageName);
+      return this.image(imageName);
+    }, executor);
+  }
+
+  /**
+   * Loads part of an image from file on the given executor, giving it the given name, so that the
+   * caller is not held up while it is decoded.
+   *
+   * @param filepath    the location to load the image from
+   * @param imageName   the name to load the image to
+   * @param subsampling keep every subsampling-th row and column, 1 to keep all of them
+   * @param region      the area of the image to load, or null to load the whole image
+   * @param executor    the executor to decode the image on
+   * @return the loaded image, completed exceptionally with an IllegalArgumentException if the
+   *         filepath is invalid, subsampling is not positive, or the region lies outside the image
+   */
+  default CompletableFuture<Image> loadImageFromFileAsync(String filepath, String imageName,
+      int subsampling, Rectangle region, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      this.loadImageFromFile(filepath, imageName, subsampling, region);
+      return this.image(imageName);
+    }, executor);
+  }
+
   /**
    * Gets the image object for an image.
    *
@@ -1,9 +1,11 @@
 package imageprocessing.model;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Objects;
@@ -11,6 +13,9 @@ import java.util.Scanner;
 import java.util.stream.Collectors;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 
 /**
@@ -114,10 +119,38 @@ class ImageReadUtil {
   public static ArrayList<ArrayList<Pixel>> readFile(String filepath)
       throws IllegalArgumentException,
       NullPointerException {
+    return ImageReadUtil.readFile(filepath, 1, null);
+  }
+
+  /**
+   * Read only the requested pixels of an image file in the PPM, GIF, PNG, JPEG, BMP, WBMP...
+   * format and produce a corresponding matrix of pixels. Every subsampling-th pixel of the given
+   * region is kept, and the decoder is asked to skip the rest, so that large images can be loaded
+   * at a fraction of the time and memory.
+   *
+   * @param filepath    the path of the file.
+   * @param subsampling keep every subsampling-th row and column, 1 to keep all of them
+   * @param region      the area of the image to read, or null to read the whole image
+   * @return pixels
+   * @throws IllegalArgumentException if file is invalid, subsampling is not positive, or the region
+   *                                  lies outside of the image
+   * @throws NullPointerException     if null filepath
+   */
+  public static ArrayList<ArrayList<Pixel>> readFile(String filepath, int subsampling,
+      Rectangle region)
+      throws IllegalArgumentException,
+      NullPointerException {
     Objects.requireNonNull(filepath);
 
+    if (subsampling < 1) {
+      throw new IllegalArgumentException("Subsampling factor must be positive.");
+    }
+    if (region != null && (region.width <= 0 || region.height <= 0)) {
+      throw new IllegalArgumentException("Region to load must have a positive width and height.");
+    }
+
     HashMap<String, Boolean> acceptedTypes = new HashMap<String, Boolean>();
-    for (String type : ImageIO.getReaderFileSuffixes()) {
+    for (String type : ImageReaderPool.readerSuffixes()) {
       acceptedTypes.put("." + type, true);
     }
     acceptedTypes.put(".ppm", true);
@@ -132,19 +165,112 @@ class ImageReadUtil {
     }
 
     try {
-      bufferedImage = ImageIO.read(new File(filepath));
+      bufferedImage = ImageReadUtil.decode(new File(filepath), subsampling, region);
       Objects.requireNonNull(bufferedImage);
     } catch (Exception readError) {
+      if (readError instanceof IllegalArgumentException) {
+        throw (IllegalArgumentException) readError;
+      }
+
+      ArrayList<ArrayList<Pixel>> ppmPixels;
       try {
-        return ImageReadUtil.readPPM(filepath);
+        ppmPixels = ImageReadUtil.readPPM(filepath);
       } catch (Exception readPPMError) {
         throw new IllegalArgumentException("Cannot find file from file, " + filepath +
             ". Please make sure it is a valid file and is one of " +
             acceptedTypes.keySet().stream().map(type -> " " + type).collect(
                 Collectors.joining(",", "", ".")));
       }
+      return ImageReadUtil.sample(ppmPixels, subsampling, region);
     }
 
+    return ImageReadUtil.toPixels(bufferedImage);
+  }
+
+  /**
+   * Decode the given file with a pooled ImageIO reader, letting the reader skip every pixel outside
+   * of the region or between the subsampled rows and columns.
+   *
+   * @param file        the file to decode
+   * @param subsampling keep every subsampling-th row and column
+   * @param region      the area of the image to decode, or null to decode the whole image
+   * @return the decoded image, or null if no ImageIO reader understands the file
+   * @throws IOException              if unable to read the file
+   * @throws IllegalArgumentException if the region lies outside of the image
+   */
+  private static BufferedImage decode(File file, int subsampling, Rectangle region)
+      throws IOException, IllegalArgumentException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+      if (input == null) {
+        return null;
+      }
+
+      String suffix = file.getName().substring(file.getName().lastIndexOf(".") + 1);
+      ImageReader reader = ImageReaderPool.borrow(suffix, input);
+      if (reader == null) {
+        return null;
+      }
+
+      try {
+        reader.setInput(input, true, true);
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (region != null) {
+          if (!region.intersects(new Rectangle(reader.getWidth(0), reader.getHeight(0)))) {
+            throw new IllegalArgumentException("Region to load lies outside of the image.");
+          }
+          param.setSourceRegion(region);
+        }
+        if (subsampling > 1) {
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        return reader.read(0, param);
+      } finally {
+        ImageReaderPool.release(suffix, reader);
+      }
+    }
+  }
+
+  /**
+   * Keep every subsampling-th pixel of the given region of an already read pixel matrix.
+   *
+   * @param pixels      the pixels of the whole image
+   * @param subsampling keep every subsampling-th row and column
+   * @param region      the area of the image to keep, or null to keep the whole image
+   * @return the kept pixels
+   * @throws IllegalArgumentException if the region lies outside of the image
+   */
+  private static ArrayList<ArrayList<Pixel>> sample(ArrayList<ArrayList<Pixel>> pixels,
+      int subsampling, Rectangle region) throws IllegalArgumentException {
+    Rectangle bounds = new Rectangle(pixels.get(0).size(), pixels.size());
+    if (region != null) {
+      if (!region.intersects(bounds)) {
+        throw new IllegalArgumentException("Region to load lies outside of the image.");
+      }
+      bounds = bounds.intersection(region);
+    }
+    if (subsampling == 1 && bounds.width == pixels.get(0).size()
+        && bounds.height == pixels.size()) {
+      return pixels;
+    }
+
+    ArrayList<ArrayList<Pixel>> sampled = new ArrayList<ArrayList<Pixel>>();
+    for (int i = bounds.y; i < bounds.y + bounds.height; i += subsampling) {
+      ArrayList<Pixel> row = new ArrayList<Pixel>();
+      for (int j = bounds.x; j < bounds.x + bounds.width; j += subsampling) {
+        row.add(pixels.get(i).get(j));
+      }
+      sampled.add(row);
+    }
+    return sampled;
+  }
+
+  /**
+   * Convert a decoded image into a matrix of 8 bit RGB pixels.
+   *
+   * @param bufferedImage the decoded image
+   * @return pixels
+   */
+  private static ArrayList<ArrayList<Pixel>> toPixels(BufferedImage bufferedImage) {
     BufferedImage convertedBufferedImage = new BufferedImage(bufferedImage.getWidth(),
         bufferedImage.getHeight(),
         BufferedImage.TYPE_INT_RGB);
@@ -168,5 +294,3 @@ class ImageReadUtil {
     return pixels;
   }
 }
-
-
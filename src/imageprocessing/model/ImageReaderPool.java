@@ -0,0 +1,110 @@
+package imageprocessing.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * The {@code ImageReaderPool} keeps ImageIO readers around between loads, so that loading many
+ * files in a row does not look up a reader in the service registry and build fresh reader state for
+ * every file. Readers are handed out to one caller at a time, so the pool can be shared by threads.
+ */
+class ImageReaderPool {
+
+  /**
+   * Most idle readers kept for each file suffix.
+   */
+  private static final int MAX_IDLE_PER_SUFFIX = Runtime.getRuntime().availableProcessors();
+
+  private static final Map<String, Queue<ImageReader>> IDLE_READERS = new ConcurrentHashMap<>();
+
+  private static volatile List<String> readerSuffixes;
+
+  /**
+   * Takes a reader able to decode the given input from the pool, preferring an idle reader last
+   * used for a file with the same suffix and otherwise asking ImageIO for one.
+   *
+   * @param suffix the file suffix of the input, without the leading dot
+   * @param input  the input to decode
+   * @return a reader that only the caller is using, or null if ImageIO cannot read the input
+   * @throws IOException if unable to inspect the input
+   */
+  public static ImageReader borrow(String suffix, ImageInputStream input) throws IOException {
+    Queue<ImageReader> idle = ImageReaderPool.idle(suffix);
+    ImageReader reader = idle.poll();
+    if (reader != null) {
+      if (reader.getOriginatingProvider() != null
+          && reader.getOriginatingProvider().canDecodeInput(input)) {
+        return reader;
+      }
+      // the file's content does not match its suffix, look the reader up instead
+      ImageReaderPool.release(suffix, reader);
+    }
+
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+    return readers.hasNext() ? readers.next() : null;
+  }
+
+  /**
+   * Gives a borrowed reader back to the pool, clearing its input and state.
+   *
+   * @param suffix the file suffix the reader was borrowed for
+   * @param reader the reader to give back
+   */
+  public static void release(String suffix, ImageReader reader) {
+    if (reader == null) {
+      return;
+    }
+
+    try {
+      reader.reset();
+    } catch (Exception e) {
+      reader.dispose();
+      return;
+    }
+
+    Queue<ImageReader> idle = ImageReaderPool.idle(suffix);
+    if (idle.size() < MAX_IDLE_PER_SUFFIX) {
+      idle.offer(reader);
+    } else {
+      reader.dispose();
+    }
+  }
+
+  /**
+   * Gets the file suffixes ImageIO can read, looking them up only once. ImageIO lists them in an
+   * order that can change from run to run and from thread to thread, so they are sorted.
+   *
+   * @return the suffixes, without leading dots, in alphabetical order
+   */
+  public static List<String> readerSuffixes() {
+    List<String> suffixes = ImageReaderPool.readerSuffixes;
+    if (suffixes == null) {
+      String[] sorted = ImageIO.getReaderFileSuffixes();
+      Arrays.sort(sorted);
+      suffixes = Collections.unmodifiableList(Arrays.asList(sorted));
+      ImageReaderPool.readerSuffixes = suffixes;
+    }
+    return suffixes;
+  }
+
+  /**
+   * Gets the queue of idle readers for a file suffix.
+   *
+   * @param suffix the file suffix
+   * @return the queue of idle readers
+   */
+  private static Queue<ImageReader> idle(String suffix) {
+    return IDLE_READERS.computeIfAbsent(suffix, name -> new ConcurrentLinkedQueue<>());
+  }
+}
@@ -0,0 +1,38 @@
+package imageprocessing.model;
+
+import java.util.Map;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * An {@code ImageStore} keeps a model's images by name, and decides how the model may treat the
+ * images it keeps: whether the model should tell it how each image was made, and whether an image
+ * it keeps may also be held elsewhere, such as under another name or in a cache.
+ */
+interface ImageStore extends Map<String, Image> {
+
+  /**
+   * Gives a name an image made by a command, with how it was made, which a store may use to make
+   * the image again instead of keeping it. Commands must make the same image every time they are
+   * run on the same source.
+   *
+   * @param name         the name of the image
+   * @param image        the image
+   * @param sourceName   the name of the image the command was run on
+   * @param sourceImage  the image the command was run on
+   * @param command      the command that made the image
+   * @param computeNanos how long the command took, in nanoseconds
+   * @return the image the name had, or null if it had none
+   */
+  Image putDerived(String name, Image image, String sourceName, Image sourceImage,
+      Command command, long computeNanos);
+
+  /**
+   * Gets whether the images of this store may be shared: given to several names, or held in caches
+   * outside the store. A store that accounts for the memory of each image on its own, and must be
+   * able to let go of it, does not allow this.
+   *
+   * @return whether its images may be shared
+   */
+  boolean sharesImages();
+}
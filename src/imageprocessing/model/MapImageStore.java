@@ -0,0 +1,73 @@
+package imageprocessing.model;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * A {@code MapImageStore} keeps a model's images in an ordinary map, which is as safe to use from
+ * several threads as the map is. It keeps every image in memory, so how an image was made does
+ * not matter to it, and its images may be shared.
+ */
+class MapImageStore extends AbstractMap<String, Image> implements ImageStore {
+
+  private final Map<String, Image> images;
+
+  /**
+   * Instantiates this store, keeping images in the given map.
+   *
+   * @param images the map to keep images in, by name
+   */
+  MapImageStore(Map<String, Image> images) {
+    this.images = Objects.requireNonNull(images);
+  }
+
+  @Override
+  public Image get(Object name) {
+    return this.images.get(name);
+  }
+
+  @Override
+  public Image put(String name, Image image) {
+    return this.images.put(name, image);
+  }
+
+  @Override
+  public Image putDerived(String name, Image image, String sourceName, Image sourceImage,
+      Command command, long computeNanos) {
+    return this.images.put(name, image);
+  }
+
+  @Override
+  public Image remove(Object name) {
+    return this.images.remove(name);
+  }
+
+  @Override
+  public boolean containsKey(Object name) {
+    return this.images.containsKey(name);
+  }
+
+  @Override
+  public int size() {
+    return this.images.size();
+  }
+
+  @Override
+  public void clear() {
+    this.images.clear();
+  }
+
+  @Override
+  public Set<Map.Entry<String, Image>> entrySet() {
+    return this.images.entrySet();
+  }
+
+  @Override
+  public boolean sharesImages() {
+    return true;
+  }
+}
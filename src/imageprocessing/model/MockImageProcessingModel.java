@@ -1,7 +1,9 @@
 package imageprocessing.model;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import imageprocessing.model.Commands.Command;
 
@@ -51,6 +53,30 @@ public class MockImageProcessingModel implements ImageProcessingModel {
     return null;
   }
 
+  @Override
+  public Void loadImageFromFile(String filepath, String imageName, int subsampling,
+      Rectangle region) throws IllegalArgumentException {
+    try {
+      this.log.append("loading part of file to " + imageName + ".\n");
+    } catch (Exception e) {
+      System.out.println(e);
+    }
+
+    return null;
+  }
+
+  @Override
+  public Void prefetchImageFromFile(String filepath, int subsampling, Rectangle region,
+      Executor executor) {
+    try {
+      this.log.append("prefetching " + filepath + ".\n");
+    } catch (Exception e) {
+      System.out.println(e);
+    }
+
+    return null;
+  }
+
   /**
    * the list of pixels.
    *
@@ -0,0 +1,137 @@
+package imageprocessing.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A {@code MonitoredImage} is a view of an image handed to a command followed by a
+ * {@link CommandMonitor}. The rows of pixels it hands out tell the monitor whenever one of them is
+ * read for the first time, which lets the monitor count progress and cancel the command without
+ * the command knowing it is followed.
+ */
+class MonitoredImage implements Image {
+
+  private final Image image;
+  private final CommandMonitor monitor;
+  private final boolean[] reached;
+
+  /**
+   * Instantiates this view of the given image, telling the monitor the command has started.
+   *
+   * @param image   the image the command works on
+   * @param monitor the monitor following the command
+   * @throws java.util.concurrent.CancellationException if the command was cancelled
+   */
+  MonitoredImage(Image image, CommandMonitor monitor) {
+    this.image = Objects.requireNonNull(image);
+    this.monitor = Objects.requireNonNull(monitor);
+    this.reached = new boolean[image.height()];
+    monitor.started(this.reached.length);
+  }
+
+  @Override
+  public ArrayList<ArrayList<Pixel>> pixels() throws IllegalArgumentException {
+    return new MonitoredRows(this.image.pixels(), 0);
+  }
+
+  @Override
+  public int width() {
+    return this.image.width();
+  }
+
+  @Override
+  public int height() {
+    return this.image.height();
+  }
+
+  @Override
+  public ArrayList<ArrayList<Pixel>> rows(int firstRow, int rowCount)
+      throws IllegalArgumentException {
+    return new MonitoredRows(this.image.rows(firstRow, rowCount), firstRow);
+  }
+
+  @Override
+  public Map<Integer, Integer> makeHistogramHashmap(String type, int normalizationFactor)
+      throws IllegalArgumentException {
+    return this.image.makeHistogramHashmap(type, normalizationFactor);
+  }
+
+  /**
+   * Notes that a row was read, telling the monitor if it is the first time.
+   *
+   * @param row the index of the row in the image
+   */
+  private void reach(int row) {
+    if (!this.reached[row]) {
+      this.reached[row] = true;
+      this.monitor.rowReached();
+    }
+  }
+
+  /**
+   * Rows of pixels that note each row read, however the command reads them.
+   */
+  private class MonitoredRows extends ArrayList<ArrayList<Pixel>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int firstRow;
+
+    /**
+     * Instantiates these rows.
+     *
+     * @param rows     the rows of pixels
+     * @param firstRow the index in the image of the first of the rows
+     */
+    MonitoredRows(ArrayList<ArrayList<Pixel>> rows, int firstRow) {
+      super(rows);
+      this.firstRow = firstRow;
+    }
+
+    @Override
+    public ArrayList<Pixel> get(int index) {
+      ArrayList<Pixel> row = super.get(index);
+      MonitoredImage.this.reach(this.firstRow + index);
+      return row;
+    }
+
+    @Override
+    public Iterator<ArrayList<Pixel>> iterator() {
+      return new Iterator<ArrayList<Pixel>>() {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return this.next < MonitoredRows.this.size();
+        }
+
+        @Override
+        public ArrayList<Pixel> next() {
+          if (!this.hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return MonitoredRows.this.get(this.next++);
+        }
+      };
+    }
+
+    @Override
+    public void forEach(Consumer<? super ArrayList<Pixel>> action) {
+      for (int i = 0; i < this.size(); i++) {
+        action.accept(this.get(i));
+      }
+    }
+
+    @Override
+    public Spliterator<ArrayList<Pixel>> spliterator() {
+      return Spliterators.spliterator(this.iterator(), this.size(),
+          Spliterator.ORDERED | Spliterator.SIZED);
+    }
+  }
+}
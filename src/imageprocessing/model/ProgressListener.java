@@ -0,0 +1,23 @@
+package imageprocessing.model;
+
+/**
+ * A {@code ProgressListener} is told how far along a command followed by a {@link CommandMonitor}
+ * is. It is told when the command starts and each time another whole percent of the rows of its
+ * image is reached, so a command is reported on at most about a hundred times however large its
+ * image is.
+ *
+ * <p>The listener is called on the thread running the command, in the middle of its work, so it
+ * should return quickly and leave anything slow, such as drawing, to another thread.</p>
+ */
+public interface ProgressListener {
+
+  /**
+   * Tells this listener how far along a command is.
+   *
+   * @param rowsDone        the number of rows the command has reached
+   * @param rows            the number of rows of the command's image
+   * @param remainingMillis the estimated time left, in milliseconds, or -1 until there is enough to
+   *                        estimate it from
+   */
+  void progressed(int rowsDone, int rows, long remainingMillis);
+}
@@ -0,0 +1,162 @@
+package imageprocessing.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The {@code RasterFileUtil} contains utility methods to write images to, and read them back from,
+ * a raw binary raster: a short header followed by the channels of every pixel, row by row, one byte
+ * per channel (two for images whose max value is above 255), or a single channel for images made
+ * only of grey pixels. Nothing is compressed or parsed, so an image is written and read about as
+ * fast as the disk allows. The format is private to this processor, for images it sets aside and
+ * reads again, and is not meant to be kept or shared.
+ */
+class RasterFileUtil {
+
+  /**
+   * Marks the start of a raster file and its version.
+   */
+  private static final int MAGIC = 0x49505231;
+
+  /**
+   * Writes an image to a raster file, replacing the file if it exists.
+   *
+   * @param image the image to write
+   * @param file  the file to write to
+   * @throws IOException if unable to write the file
+   */
+  static void write(Image image, File file) throws IOException {
+    int width = image.width();
+    int height = image.height();
+    Pixel first = image.rows(0, 1).get(0).get(0);
+    int maxValue = first.byteSize();
+    int bytesPerSample = maxValue > 255 ? 2 : 1;
+    boolean grey = RasterFileUtil.isGrey(image);
+    int channels = grey ? 1 : 3;
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(width);
+      out.writeInt(height);
+      out.writeInt(maxValue);
+      out.writeBoolean(grey);
+      out.writeBoolean(image instanceof GreyscaleImage);
+
+      byte[] row = new byte[width * channels * bytesPerSample];
+      for (int y = 0; y < height; y++) {
+        int i = 0;
+        for (Pixel pixel : image.rows(y, 1).get(0)) {
+          if (bytesPerSample == 1) {
+            // the packed value holds 8 bits per channel, blue last
+            int rgb = pixel.intRGB();
+            if (!grey) {
+              row[i++] = (byte) (rgb >> 16);
+              row[i++] = (byte) (rgb >> 8);
+            }
+            row[i++] = (byte) rgb;
+          } else {
+            String[] components = pixel.toString().split(" ");
+            for (int c = 0; c < channels; c++) {
+              int sample = Integer.parseInt(components[c]);
+              row[i++] = (byte) (sample >> 8);
+              row[i++] = (byte) sample;
+            }
+          }
+        }
+        out.write(row);
+      }
+    }
+  }
+
+  /**
+   * Reads an image back from a raster file written by {@link #write(Image, File)}.
+   *
+   * @param file the file to read
+   * @return the image, with pixels of the same kind as the image written
+   * @throws IOException if unable to read the file, or it is not a raster file
+   */
+  static Image read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a raster file.");
+      }
+      int width = in.readInt();
+      int height = in.readInt();
+      int maxValue = in.readInt();
+      boolean grey = in.readBoolean();
+      boolean greyImage = in.readBoolean();
+      int bytesPerSample = maxValue > 255 ? 2 : 1;
+      int channels = grey ? 1 : 3;
+
+      byte[] row = new byte[width * channels * bytesPerSample];
+      ArrayList<ArrayList<Pixel>> pixels = new ArrayList<>(height);
+      ArrayList<ArrayList<GreyscalePixel>> greyPixels = new ArrayList<>(greyImage ? height : 0);
+      int[] rgb = new int[3];
+      for (int y = 0; y < height; y++) {
+        in.readFully(row);
+        ArrayList<Pixel> pixelRow = new ArrayList<>(width);
+        ArrayList<GreyscalePixel> greyRow = new ArrayList<>(greyImage ? width : 0);
+        int i = 0;
+        for (int x = 0; x < width; x++) {
+          for (int c = 0; c < channels; c++) {
+            int sample = row[i++] & 0xff;
+            if (bytesPerSample == 2) {
+              sample = (sample << 8) | (row[i++] & 0xff);
+            }
+            rgb[c] = sample;
+          }
+          if (greyImage) {
+            greyRow.add(new GreyscalePixel(rgb[0], maxValue));
+          } else if (grey) {
+            pixelRow.add(new GreyscalePixel(rgb[0], maxValue));
+          } else {
+            pixelRow.add(new RGBPixel(rgb[0], rgb[1], rgb[2], maxValue));
+          }
+        }
+        if (greyImage) {
+          greyPixels.add(greyRow);
+        } else {
+          pixels.add(pixelRow);
+        }
+      }
+      return greyImage ? new GreyscaleImage(greyPixels) : new BasicImage(pixels);
+    }
+  }
+
+  /**
+   * Gets whether the images of the given class can be written to a raster file and read back as
+   * the same class.
+   *
+   * @param image the image
+   * @return whether it can be written
+   */
+  static boolean canWrite(Image image) {
+    return image.getClass() == BasicImage.class || image.getClass() == GreyscaleImage.class;
+  }
+
+  /**
+   * Gets whether every pixel of an image is a grey pixel, so that one channel describes it.
+   *
+   * @param image the image
+   * @return whether every pixel is grey
+   */
+  private static boolean isGrey(Image image) {
+    for (int y = 0; y < image.height(); y++) {
+      for (Pixel pixel : image.rows(y, 1).get(0)) {
+        if (!(pixel instanceof GreyscalePixel)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,458 @@
+package imageprocessing.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * A {@code SpillingImageStore} keeps a model's images, by name, within a memory budget. When the
+ * images held in memory come to more than the budget, the least recently used ones are written to
+ * a spill directory as raster files (see {@link RasterFileUtil}) and dropped from memory, and an
+ * image is read back from its file the next time it is asked for. Images never change once made,
+ * so an image read back keeps its file, and setting it aside again costs nothing.
+ *
+ * <p>An image made by a command can instead be put with its lineage: the image it was made from
+ * and the command that made it (see {@link #putDerived}). Such an image can be dropped without
+ * writing it anywhere, and made again by running its command on its source, itself read back or
+ * made again if it is not in memory. The store measures how long commands, spill writes and reads
+ * take, and drops an image this way only when making it again is expected to be quicker than
+ * writing it and reading it back. An image whose source is replaced or removed keeps its pixels, in
+ * memory or in a spill file, from then on.</p>
+ *
+ * <p>The memory an image uses is estimated from its number of pixels. An image is only ever set
+ * aside for others, never for itself, so a single image larger than the budget is still kept.
+ * Images of kinds that cannot be written as rasters stay in memory. The store is safe to use from
+ * several threads, and its spill files are deleted when they are no longer needed or the program
+ * exits.</p>
+ */
+class SpillingImageStore extends AbstractMap<String, Image> implements ImageStore {
+
+  /**
+   * The estimated memory used by one pixel of an image held in memory: the pixel object with its
+   * four components, and its reference in its row.
+   */
+  static final long PIXEL_BYTES = 40;
+
+  /**
+   * The time assumed to write or read one pixel of a spill file, until one has been measured.
+   */
+  private static final double DEFAULT_SPILL_NANOS_PER_PIXEL = 100;
+
+  private final long budgetBytes;
+  private final File spillParent;
+  // in the order the images were last used, least recently used first
+  private final LinkedHashMap<String, StoredImage> images;
+  private File spillDirectory;
+  private long residentBytes;
+  private int filesWritten;
+  private double writeNanosPerPixel;
+  private double readNanosPerPixel;
+
+  /**
+   * Instantiates this store, with no images.
+   *
+   * @param budgetBytes    the most memory the images held in memory should use, in bytes
+   * @param spillDirectory the directory to make the spill directory in
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  SpillingImageStore(long budgetBytes, File spillDirectory) throws IllegalArgumentException {
+    if (budgetBytes <= 0) {
+      throw new IllegalArgumentException("Memory budget must be positive.");
+    }
+    this.budgetBytes = budgetBytes;
+    this.spillParent = Objects.requireNonNull(spillDirectory);
+    this.images = new LinkedHashMap<>(16, 0.75f, true);
+    this.writeNanosPerPixel = DEFAULT_SPILL_NANOS_PER_PIXEL;
+    this.readNanosPerPixel = DEFAULT_SPILL_NANOS_PER_PIXEL;
+  }
+
+  /**
+   * Gets an image, reading it back from its spill file or making it again if it was set aside.
+   *
+   * @param name the name of the image
+   * @return the image, or null if there is no image by that name
+   * @throws IllegalArgumentException if the image was set aside and cannot be read back or made
+   *                                  again
+   */
+  @Override
+  public synchronized Image get(Object name) throws IllegalArgumentException {
+    StoredImage stored = this.images.get(name);
+    if (stored == null) {
+      return null;
+    }
+    if (stored.image == null) {
+      Image image = this.recover(stored);
+      this.spill(stored);
+      return image;
+    }
+    return stored.image;
+  }
+
+  /**
+   * Gives a name an image, setting aside the least recently used images if the images in memory
+   * then come to more than the budget.
+   *
+   * @param name  the name of the image
+   * @param image the image
+   * @return the image the name had, or null if it had none or it was set aside
+   */
+  @Override
+  public synchronized Image put(String name, Image image) {
+    StoredImage stored = new StoredImage(Objects.requireNonNull(image),
+        (long) image.width() * image.height() * PIXEL_BYTES);
+    StoredImage old = this.images.put(Objects.requireNonNull(name), stored);
+    this.forget(old);
+    this.residentBytes += stored.bytes;
+    this.spill(stored);
+    return old == null ? null : old.image;
+  }
+
+  /**
+   * Gives a name an image made by a command, remembering how it was made so that it can be dropped
+   * and made again rather than written to a spill file. Commands must make the same image every
+   * time they are run on the same source.
+   *
+   * @param name         the name of the image
+   * @param image        the image
+   * @param sourceName   the name of the image the command was run on
+   * @param sourceImage  the image the command was run on, which is only remembered as the source
+   *                     if the name still has it in memory
+   * @param command      the command that made the image
+   * @param computeNanos how long the command took, in nanoseconds
+   * @return the image the name had, or null if it had none or it was set aside
+   */
+  @Override
+  public synchronized Image putDerived(String name, Image image, String sourceName,
+      Image sourceImage, Command command, long computeNanos) {
+    StoredImage source = this.images.get(sourceName);
+    StoredImage stored = new StoredImage(Objects.requireNonNull(image),
+        (long) image.width() * image.height() * PIXEL_BYTES);
+    if (source != null && source.image == sourceImage) {
+      stored.source = source;
+      stored.command = Objects.requireNonNull(command);
+      stored.computeNanos = computeNanos;
+    }
+    StoredImage old = this.images.put(Objects.requireNonNull(name), stored);
+    this.forget(old);
+    this.residentBytes += stored.bytes;
+    this.spill(stored);
+    return old == null ? null : old.image;
+  }
+
+  @Override
+  public synchronized Image remove(Object name) {
+    StoredImage old = this.images.remove(name);
+    this.forget(old);
+    // the images made from it may have been made again
+    this.spill(null);
+    return old == null ? null : old.image;
+  }
+
+  @Override
+  public synchronized boolean containsKey(Object name) {
+    return this.images.containsKey(name);
+  }
+
+  @Override
+  public synchronized int size() {
+    return this.images.size();
+  }
+
+  @Override
+  public synchronized void clear() {
+    for (StoredImage stored : this.images.values()) {
+      this.delete(stored);
+    }
+    this.images.clear();
+    this.residentBytes = 0;
+  }
+
+  /**
+   * Gets the images of this store. Iterating over them reads back every image set aside, so it is
+   * only meant for small stores and tests.
+   *
+   * @return the images, by name
+   */
+  @Override
+  public Set<Map.Entry<String, Image>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Image>>() {
+      @Override
+      public Iterator<Map.Entry<String, Image>> iterator() {
+        List<String> names;
+        synchronized (SpillingImageStore.this) {
+          names = new ArrayList<>(SpillingImageStore.this.images.keySet());
+        }
+        List<Map.Entry<String, Image>> entries = new ArrayList<>();
+        for (String name : names) {
+          Image image = SpillingImageStore.this.get(name);
+          if (image != null) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(name, image));
+          }
+        }
+        return entries.iterator();
+      }
+
+      @Override
+      public int size() {
+        return SpillingImageStore.this.size();
+      }
+    };
+  }
+
+  /**
+   * Gets whether the images of this store may be shared. They may not, since the store counts the
+   * memory of each image on its own and sets it aside to stay within its budget.
+   *
+   * @return false
+   */
+  @Override
+  public boolean sharesImages() {
+    return false;
+  }
+
+  /**
+   * Gets the estimated memory used by the images held in memory.
+   *
+   * @return the memory in bytes
+   */
+  synchronized long residentBytes() {
+    return this.residentBytes;
+  }
+
+  /**
+   * Gets whether the named image is held in memory rather than set aside.
+   *
+   * @param name the name of the image
+   * @return whether it is in memory, or false if there is no image by that name
+   */
+  synchronized boolean isResident(String name) {
+    StoredImage stored = this.peek(name);
+    return stored != null && stored.image != null;
+  }
+
+  /**
+   * Gets whether the named image was set aside in a spill file.
+   *
+   * @param name the name of the image
+   * @return whether it has a spill file, or false if there is no image by that name
+   */
+  synchronized boolean isSpilled(String name) {
+    StoredImage stored = this.peek(name);
+    return stored != null && stored.file != null;
+  }
+
+  /**
+   * Looks up an image without counting it as a use.
+   *
+   * @param name the name of the image
+   * @return the image, or null if there is no image by that name
+   */
+  private StoredImage peek(String name) {
+    for (Map.Entry<String, StoredImage> entry : this.images.entrySet()) {
+      if (entry.getKey().equals(name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Brings an image back into memory, reading its spill file or making it again from its source.
+   *
+   * @param stored the image
+   * @return its pixels
+   * @throws IllegalArgumentException if unable to read back or make again the image
+   */
+  private Image recover(StoredImage stored) throws IllegalArgumentException {
+    if (stored.image != null) {
+      return stored.image;
+    }
+    long start = System.nanoTime();
+    if (stored.file != null) {
+      try {
+        stored.image = RasterFileUtil.read(stored.file);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Unable to read back an image: " + e.getMessage());
+      }
+      this.readNanosPerPixel = SpillingImageStore.average(this.readNanosPerPixel,
+          System.nanoTime() - start, stored.pixels());
+    } else {
+      Image source = this.recover(stored.source);
+      start = System.nanoTime();
+      try {
+        stored.image = stored.command.execute(source);
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Unable to make an image again: " + e.getMessage());
+      }
+      stored.computeNanos = System.nanoTime() - start;
+    }
+    this.residentBytes += stored.bytes;
+    return stored.image;
+  }
+
+  /**
+   * Sets aside the least recently used images, other than the given one, until the images in
+   * memory come to no more than the budget. An image with a lineage is dropped if making it again
+   * is expected to be quicker than writing and reading it, and written to a spill file otherwise.
+   * Stops early if a spill file cannot be written, keeping the rest in memory.
+   *
+   * @param keep the image just used, which stays in memory, or null
+   */
+  private void spill(StoredImage keep) {
+    for (StoredImage stored : this.images.values()) {
+      if (this.residentBytes <= this.budgetBytes) {
+        return;
+      }
+      if (stored == keep || stored.image == null) {
+        continue;
+      }
+      boolean recompute = stored.source != null && stored.file == null
+          && stored.computeNanos + this.recoveryNanos(stored.source)
+          < (this.writeNanosPerPixel + this.readNanosPerPixel) * stored.pixels();
+      if (!recompute && !RasterFileUtil.canWrite(stored.image)) {
+        continue;
+      }
+      if (!recompute && stored.file == null) {
+        long start = System.nanoTime();
+        try {
+          stored.file = this.newSpillFile();
+          RasterFileUtil.write(stored.image, stored.file);
+        } catch (IOException e) {
+          // out of disk, keep what is left in memory
+          this.delete(stored);
+          return;
+        }
+        this.writeNanosPerPixel = SpillingImageStore.average(this.writeNanosPerPixel,
+            System.nanoTime() - start, stored.pixels());
+      }
+      stored.image = null;
+      this.residentBytes -= stored.bytes;
+    }
+  }
+
+  /**
+   * Estimates how long it would take to bring an image back into memory.
+   *
+   * @param stored the image
+   * @return the estimated time in nanoseconds
+   */
+  private double recoveryNanos(StoredImage stored) {
+    if (stored.image != null) {
+      return 0;
+    }
+    if (stored.file != null) {
+      return this.readNanosPerPixel * stored.pixels();
+    }
+    return stored.computeNanos + this.recoveryNanos(stored.source);
+  }
+
+  /**
+   * Forgets an image that was replaced or removed, deleting its spill file. The images made from
+   * it that were dropped are made again first, and every image made from it forgets its lineage,
+   * so that it is written to a spill file from then on.
+   *
+   * @param stored the image, or null
+   */
+  private void forget(StoredImage stored) {
+    if (stored == null) {
+      return;
+    }
+    for (StoredImage derived : new ArrayList<>(this.images.values())) {
+      if (derived.source == stored) {
+        this.recover(derived);
+        derived.source = null;
+        derived.command = null;
+      }
+    }
+    if (stored.image != null) {
+      this.residentBytes -= stored.bytes;
+    }
+    this.delete(stored);
+  }
+
+  /**
+   * Folds a new measurement into a running average of the time per pixel.
+   *
+   * @param average the average so far
+   * @param nanos   the time measured
+   * @param pixels  the number of pixels it took for
+   * @return the new average
+   */
+  private static double average(double average, long nanos, long pixels) {
+    return pixels == 0 ? average : (average + (double) nanos / pixels) / 2;
+  }
+
+  /**
+   * Deletes the spill file of an image, if it has one.
+   *
+   * @param stored the image
+   */
+  private void delete(StoredImage stored) {
+    if (stored.file != null) {
+      stored.file.delete();
+      stored.file = null;
+    }
+  }
+
+  /**
+   * Makes a file to set an image aside in, making the spill directory the first time.
+   *
+   * @return the file
+   * @throws IOException if unable to make the spill directory
+   */
+  private File newSpillFile() throws IOException {
+    if (this.spillDirectory == null) {
+      this.spillParent.mkdirs();
+      this.spillDirectory = Files.createTempDirectory(
+          this.spillParent.toPath(), "imageprocessing-spill-").toFile();
+      this.spillDirectory.deleteOnExit();
+    }
+    File file = new File(this.spillDirectory, (this.filesWritten++) + ".raster");
+    file.deleteOnExit();
+    return file;
+  }
+
+  /**
+   * An image of the store, held in memory, set aside in a spill file, or both.
+   */
+  private static class StoredImage {
+
+    private final long bytes;
+    private Image image;
+    private File file;
+    private StoredImage source;
+    private Command command;
+    private long computeNanos;
+
+    /**
+     * Instantiates this image, held in memory.
+     *
+     * @param image the image
+     * @param bytes the estimated memory it uses
+     */
+    StoredImage(Image image, long bytes) {
+      this.image = image;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Gets the number of pixels of this image, from the memory it uses.
+     *
+     * @return the number of pixels
+     */
+    long pixels() {
+      return this.bytes / PIXEL_BYTES;
+    }
+  }
+}
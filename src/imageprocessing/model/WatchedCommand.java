@@ -0,0 +1,47 @@
+package imageprocessing.model;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import imageprocessing.model.Commands.Command;
+
+/**
+ * A {@code WatchedCommand} runs a command while a {@link CommandMonitor} follows it. It keeps the
+ * command it runs, so that the model can tell which command it really is, such as to run it again
+ * later without the monitor, or to find its result among those already made.
+ */
+class WatchedCommand implements Command {
+
+  private final Command command;
+  private final Supplier<CommandMonitor> monitor;
+
+  /**
+   * Instantiates this command.
+   *
+   * @param command the command to run
+   * @param monitor gives the monitor to follow the command each time it is run
+   */
+  WatchedCommand(Command command, Supplier<CommandMonitor> monitor) {
+    this.command = Objects.requireNonNull(command);
+    this.monitor = Objects.requireNonNull(monitor);
+  }
+
+  @Override
+  public Image execute(Image image) {
+    return this.command.execute(new MonitoredImage(image, this.monitor.get()));
+  }
+
+  /**
+   * Gets the command that does the work of the given command, without the monitors following it,
+   * such as to run it again later when nobody is following it.
+   *
+   * @param command the command, which may be watched
+   * @return the command that does the work
+   */
+  static Command unwrap(Command command) {
+    while (command instanceof WatchedCommand) {
+      command = ((WatchedCommand) command).command;
+    }
+    return command;
+  }
+}
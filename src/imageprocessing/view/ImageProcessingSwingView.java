@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 
 import imageprocessing.controller.SwingAppFeatures;
+import imageprocessing.model.CommandMonitor;
 import imageprocessing.model.Image;
 import imageprocessing.model.Pixel;
 
@@ -58,6 +59,20 @@ public interface ImageProcessingSwingView extends ImageProcessingView{
    */
   void refresh();
 
+  /**
+   * Shows that work has started in the background, how far along it is, and, if it has a monitor, a
+   * way to cancel it, which sends the "Cancel" command to the features.
+   *
+   * @param description what is being done
+   * @param monitor     follows the work, or null if it cannot be measured or cancelled
+   */
+  void showWorkStarted(String description, CommandMonitor monitor);
+
+  /**
+   * Shows that the work in the background has finished, or was cancelled.
+   */
+  void showWorkFinished();
+
   /**
    * Get the from image for an operation.
    * @return from image as a string
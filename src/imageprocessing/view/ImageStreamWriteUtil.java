@@ -0,0 +1,409 @@
+package imageprocessing.view;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import imageprocessing.model.Image;
+import imageprocessing.model.Pixel;
+
+/**
+ * This class contains utility methods to write images to files one strip of rows at a time, so that
+ * saving never needs a full BufferedImage or a full copy of the image's pixels.
+ */
+class ImageStreamWriteUtil {
+
+  /**
+   * Number of rows pulled from an image at a time.
+   */
+  static final int STRIP_ROWS = 64;
+
+  /**
+   * Size of the data in each PNG IDAT chunk.
+   */
+  private static final int PNG_CHUNK_SIZE = 1 << 16;
+
+  /**
+   * Writes the given image to a file, choosing the encoder from the filepath's suffix.
+   *
+   * @param image               to write to file
+   * @param filepath            filepath of the file to write, ending in .ppm, .bmp, or .png
+   * @param pngCompressionLevel the deflate level used for PNG files, or -1 for the default
+   * @throws IllegalArgumentException if the suffix cannot be streamed
+   * @throws IOException              if unable to write to file
+   * @throws NullPointerException     if null args
+   */
+  public static void writeStrips(Image image, String filepath, int pngCompressionLevel)
+      throws IllegalArgumentException, IOException, NullPointerException {
+    Objects.requireNonNull(image);
+    Objects.requireNonNull(filepath);
+
+    switch (filepath.substring(filepath.lastIndexOf(".") + 1)) {
+      case "ppm":
+        ImageStreamWriteUtil.writePPM(image, filepath);
+        break;
+      case "bmp":
+        ImageStreamWriteUtil.writeBMP(image, filepath);
+        break;
+      case "png":
+        ImageStreamWriteUtil.writePNG(image, filepath, pngCompressionLevel);
+        break;
+      default:
+        throw new IllegalArgumentException("Cannot stream image to file " + filepath +
+            ". File path must end in one of: ppm, bmp, png.");
+    }
+  }
+
+  /**
+   * Determines whether the given filepath has a suffix that can be streamed.
+   *
+   * @param filepath the filepath to check
+   * @return true if the image can be written with writeStrips
+   */
+  public static boolean canStream(String filepath) {
+    return filepath.endsWith(".ppm") || filepath.endsWith(".bmp") || filepath.endsWith(".png");
+  }
+
+  /**
+   * Writes the given image to file as an ASCII PPM, in the same layout as
+   * ImageWriteUtil.writePPMPixelsToFile.
+   *
+   * @param image    to write to file
+   * @param filepath filepath of the file to write
+   * @throws IOException if unable to write to file
+   */
+  public static void writePPM(Image image, String filepath) throws IOException {
+    try (BufferedWriter out = new BufferedWriter(new FileWriter(filepath, false), 1 << 16)) {
+      out.write(String.format("%s\n%d\n%d\n%d\n",
+          "P3",
+          image.width(),
+          image.height(),
+          image.rows(0, 1).get(0).get(0).byteSize()));
+
+      for (int y = 0; y < image.height(); y += STRIP_ROWS) {
+        for (ArrayList<Pixel> row : image.rows(y, Math.min(STRIP_ROWS, image.height() - y))) {
+          for (Pixel pixel : row) {
+            out.write(pixel.toString());
+            out.write('\n');
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the given image to file as an uncompressed 24 bit BMP. BMP rows are stored bottom to
+   * top, so strips are pulled from the end of the image first.
+   *
+   * @param image    to write to file
+   * @param filepath filepath of the file to write
+   * @throws IOException if unable to write to file
+   */
+  public static void writeBMP(Image image, String filepath) throws IOException {
+    int width = image.width();
+    int height = image.height();
+    int rowSize = (width * 3 + 3) & ~3;
+    long imageSize = (long) rowSize * height;
+    if (imageSize + 54 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image is too large to be saved as a BMP.");
+    }
+
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filepath), 1 << 16)) {
+      // file header
+      out.write('B');
+      out.write('M');
+      ImageStreamWriteUtil.writeIntLE(out, (int) imageSize + 54);
+      ImageStreamWriteUtil.writeIntLE(out, 0);
+      ImageStreamWriteUtil.writeIntLE(out, 54);
+
+      // info header
+      ImageStreamWriteUtil.writeIntLE(out, 40);
+      ImageStreamWriteUtil.writeIntLE(out, width);
+      ImageStreamWriteUtil.writeIntLE(out, height);
+      out.write(1);
+      out.write(0);
+      out.write(24);
+      out.write(0);
+      ImageStreamWriteUtil.writeIntLE(out, 0);
+      ImageStreamWriteUtil.writeIntLE(out, (int) imageSize);
+      ImageStreamWriteUtil.writeIntLE(out, 2835);
+      ImageStreamWriteUtil.writeIntLE(out, 2835);
+      ImageStreamWriteUtil.writeIntLE(out, 0);
+      ImageStreamWriteUtil.writeIntLE(out, 0);
+
+      byte[] line = new byte[rowSize];
+      for (int end = height; end > 0; end -= STRIP_ROWS) {
+        int start = Math.max(0, end - STRIP_ROWS);
+        ArrayList<ArrayList<Pixel>> strip = image.rows(start, end - start);
+        for (int i = strip.size() - 1; i >= 0; i--) {
+          ArrayList<Pixel> row = strip.get(i);
+          for (int j = 0; j < width; j++) {
+            int rgb = row.get(j).intRGB();
+            line[j * 3] = (byte) rgb;
+            line[j * 3 + 1] = (byte) (rgb >> 8);
+            line[j * 3 + 2] = (byte) (rgb >> 16);
+          }
+          out.write(line);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the given image to file as an 8 bit RGB PNG. Filtered rows are deflated as they are
+   * pulled from the image, and the compressed data is cut into IDAT chunks as it is produced.
+   *
+   * @param image            to write to file
+   * @param filepath         filepath of the file to write
+   * @param compressionLevel the deflate level, 0 to 9, or -1 for the default
+   * @throws IOException if unable to write to file
+   */
+  public static void writePNG(Image image, String filepath, int compressionLevel)
+      throws IOException {
+    int width = image.width();
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(filepath), 1 << 16))) {
+      ImageStreamWriteUtil.writePNGHeader(out, width, image.height());
+
+      Deflater deflater = new Deflater(compressionLevel);
+      try {
+        DeflaterOutputStream idat = new DeflaterOutputStream(
+            new PNGChunkOutputStream(out, "IDAT"), deflater, PNG_CHUNK_SIZE);
+        byte[] previous = new byte[width * 3];
+        byte[] current = new byte[width * 3];
+        byte[] filtered = new byte[width * 3 + 1];
+        for (int y = 0; y < image.height(); y += STRIP_ROWS) {
+          for (ArrayList<Pixel> row : image.rows(y, Math.min(STRIP_ROWS, image.height() - y))) {
+            ImageStreamWriteUtil.toRGBBytes(row, current);
+            ImageStreamWriteUtil.filterPNGRow(current, previous, filtered);
+            idat.write(filtered);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+          }
+        }
+        idat.close();
+      } finally {
+        deflater.end();
+      }
+
+      ImageStreamWriteUtil.writePNGChunk(out, "IEND", new byte[0], 0);
+    }
+  }
+
+  /**
+   * Writes the PNG signature and IHDR chunk for an 8 bit RGB image.
+   *
+   * @param out    the stream to write to
+   * @param width  width of the image
+   * @param height height of the image
+   * @throws IOException if unable to write
+   */
+  static void writePNGHeader(DataOutputStream out, int width, int height) throws IOException {
+    out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+    byte[] header = new byte[13];
+    header[0] = (byte) (width >>> 24);
+    header[1] = (byte) (width >>> 16);
+    header[2] = (byte) (width >>> 8);
+    header[3] = (byte) width;
+    header[4] = (byte) (height >>> 24);
+    header[5] = (byte) (height >>> 16);
+    header[6] = (byte) (height >>> 8);
+    header[7] = (byte) height;
+    header[8] = 8; // bit depth
+    header[9] = 2; // truecolor
+    ImageStreamWriteUtil.writePNGChunk(out, "IHDR", header, header.length);
+  }
+
+  /**
+   * Writes one PNG chunk, with its length and CRC.
+   *
+   * @param out    the stream to write to
+   * @param type   the four letter chunk type
+   * @param data   the chunk data
+   * @param length the number of bytes of data to write
+   * @throws IOException if unable to write
+   */
+  static void writePNGChunk(DataOutputStream out, String type, byte[] data, int length)
+      throws IOException {
+    byte[] typeBytes = type.getBytes("US-ASCII");
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+
+    out.writeInt(length);
+    out.write(typeBytes);
+    out.write(data, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Copies the RGB components of a row of pixels into a byte array.
+   *
+   * @param row the row of pixels
+   * @param rgb the array to fill, three bytes per pixel
+   */
+  static void toRGBBytes(ArrayList<Pixel> row, byte[] rgb) {
+    for (int j = 0; j < row.size(); j++) {
+      int value = row.get(j).intRGB();
+      rgb[j * 3] = (byte) (value >> 16);
+      rgb[j * 3 + 1] = (byte) (value >> 8);
+      rgb[j * 3 + 2] = (byte) value;
+    }
+  }
+
+  /**
+   * Filters a row for PNG, trying each of the five PNG filters and keeping the one whose output
+   * has the smallest sum of absolute values, which usually compresses best. The filtered row starts
+   * with its filter type byte.
+   *
+   * @param current  the row to filter
+   * @param previous the row above it, all zeros for the first row of the image
+   * @param filtered the array to fill, one byte longer than the row
+   */
+  static void filterPNGRow(byte[] current, byte[] previous, byte[] filtered) {
+    long bestSum = Long.MAX_VALUE;
+    int bestType = 0;
+    for (int type = 0; type < 5; type++) {
+      long sum = 0;
+      for (int i = 0; i < current.length && sum < bestSum; i++) {
+        sum += Math.abs((byte) ImageStreamWriteUtil.filterPNGByte(type, current, previous, i));
+      }
+      if (sum < bestSum) {
+        bestSum = sum;
+        bestType = type;
+      }
+    }
+
+    filtered[0] = (byte) bestType;
+    for (int i = 0; i < current.length; i++) {
+      filtered[i + 1] = (byte) ImageStreamWriteUtil.filterPNGByte(bestType, current, previous, i);
+    }
+  }
+
+  /**
+   * Applies one PNG filter to one byte of a row.
+   *
+   * @param type     the PNG filter type, 0 (None) to 4 (Paeth)
+   * @param current  the row being filtered
+   * @param previous the row above it
+   * @param i        the index of the byte to filter
+   * @return the filtered byte
+   */
+  private static int filterPNGByte(int type, byte[] current, byte[] previous, int i) {
+    int value = current[i] & 255;
+    int left = i >= 3 ? current[i - 3] & 255 : 0;
+    int up = previous[i] & 255;
+    int upLeft = i >= 3 ? previous[i - 3] & 255 : 0;
+
+    switch (type) {
+      case 1:
+        return value - left;
+      case 2:
+        return value - up;
+      case 3:
+        return value - ((left + up) >> 1);
+      case 4:
+        int estimate = left + up - upLeft;
+        int leftDistance = Math.abs(estimate - left);
+        int upDistance = Math.abs(estimate - up);
+        int upLeftDistance = Math.abs(estimate - upLeft);
+        if (leftDistance <= upDistance && leftDistance <= upLeftDistance) {
+          return value - left;
+        } else if (upDistance <= upLeftDistance) {
+          return value - up;
+        } else {
+          return value - upLeft;
+        }
+      default:
+        return value;
+    }
+  }
+
+  /**
+   * Writes an int to the stream in little endian order.
+   *
+   * @param out   the stream to write to
+   * @param value the value to write
+   * @throws IOException if unable to write
+   */
+  private static void writeIntLE(OutputStream out, int value) throws IOException {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+    out.write(value >>> 24);
+  }
+
+  /**
+   * An output stream that wraps everything written to it in PNG chunks of the given type.
+   */
+  static class PNGChunkOutputStream extends OutputStream {
+
+    private final DataOutputStream out;
+    private final String type;
+    private final byte[] buffer;
+    private int size;
+
+    /**
+     * Instantiates this stream, writing chunks to the given stream.
+     *
+     * @param out  the stream to write chunks to
+     * @param type the four letter chunk type
+     */
+    PNGChunkOutputStream(DataOutputStream out, String type) {
+      this.out = out;
+      this.type = type;
+      this.buffer = new byte[PNG_CHUNK_SIZE];
+      this.size = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.buffer[this.size++] = (byte) b;
+      if (this.size == this.buffer.length) {
+        this.flushChunk();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int count = Math.min(len, this.buffer.length - this.size);
+        System.arraycopy(b, off, this.buffer, this.size, count);
+        this.size += count;
+        off += count;
+        len -= count;
+        if (this.size == this.buffer.length) {
+          this.flushChunk();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.flushChunk();
+    }
+
+    /**
+     * Writes any buffered data as a chunk.
+     *
+     * @throws IOException if unable to write
+     */
+    private void flushChunk() throws IOException {
+      if (this.size > 0) {
+        ImageStreamWriteUtil.writePNGChunk(this.out, this.type, this.buffer, this.size);
+        this.size = 0;
+      }
+    }
+  }
+}
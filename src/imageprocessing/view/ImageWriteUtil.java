@@ -2,15 +2,17 @@ package imageprocessing.view;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 
 import imageprocessing.model.Image;
 import imageprocessing.model.Pixel;
@@ -34,11 +36,30 @@ class ImageWriteUtil {
   public static void writePixelsToFile(Image image,
       String filepath)
       throws IOException, NullPointerException, IllegalArgumentException {
+    ImageWriteUtil.writePixelsToFile(image, filepath, new SaveOptions());
+  }
+
+  /**
+   * Saves the given pixel matrix, representing an image, to a file, using the encoders chosen by
+   * the given options.
+   *
+   * @param image    image that compose the image to write to the file assumes pixels have byteSize
+   *                 of 255
+   * @param filepath to save image to
+   * @param options  the choice of encoders
+   * @throws IOException              if unable to write to file
+   * @throws NullPointerException     if null args
+   * @throws IllegalArgumentException if unrecognized filepath or illegal pixel array
+   */
+  public static void writePixelsToFile(Image image,
+      String filepath, SaveOptions options)
+      throws IOException, NullPointerException, IllegalArgumentException {
     Objects.requireNonNull(filepath);
     Objects.requireNonNull(image);
+    Objects.requireNonNull(options);
 
     HashMap<String, Boolean> acceptedTypes = new HashMap<String, Boolean>();
-    for (String type : ImageIO.getWriterFileSuffixes()) {
+    for (String type : ImageWriterPool.writerSuffixes()) {
       acceptedTypes.put("." + type, true);
     }
     acceptedTypes.put(".ppm", true);
@@ -47,7 +68,7 @@ class ImageWriteUtil {
         acceptedTypes.get(filepath.substring(filepath.lastIndexOf("."))) == null) {
       throw new IllegalArgumentException("Unrecognized file suffix in filepath: " + filepath + "." +
           " File path must end in one of: ppm, " +
-          Arrays.stream(ImageIO.getWriterFileSuffixes()).collect(
+          ImageWriterPool.writerSuffixes().stream().collect(
               Collectors.joining(", ", "", ".")));
     }
     String formatName = filepath.substring(filepath.lastIndexOf(".") + 1);
@@ -64,10 +85,21 @@ class ImageWriteUtil {
       }
     }
 
+    if (formatName.equals("png") && options.isParallelPNG()) {
+      ParallelPNGWriteUtil.writePNG(image, filepath, options.getPNGCompressionLevel());
+      return;
+    }
+
+    if (ImageStreamWriteUtil.canStream(filepath)
+        && ImageWriteUtil.isTooLargeToBuffer(image, options.getStreamThresholdBytes())) {
+      ImageStreamWriteUtil.writeStrips(image, filepath, options.getPNGCompressionLevel());
+      return;
+    }
+
     BufferedImage bufferedImage = new ImageWriteUtil().getBufferedImage(image);
 
     try {
-      if (!ImageIO.write(bufferedImage, formatName, fileObj)) {
+      if (!ImageWriteUtil.write(bufferedImage, formatName, fileObj, options)) {
         ImageWriteUtil.writePPMPixelsToFile(image, filepath);
       }
     } catch (Exception imageIOError) {
@@ -79,6 +111,78 @@ class ImageWriteUtil {
     }
   }
 
+  /**
+   * Encodes the buffered image to a file with a pooled ImageIO writer, applying the JPEG quality or
+   * PNG compression level of the given options.
+   *
+   * @param bufferedImage the image to encode
+   * @param formatName    the informal format name, such as "png"
+   * @param fileObj       the file to write
+   * @param options       the encoder parameters
+   * @return false if ImageIO has no writer able to encode the image in the format, as with
+   *         {@link ImageIO#write}, in which case the file is left untouched
+   * @throws IOException if unable to write to file
+   */
+  private static boolean write(BufferedImage bufferedImage, String formatName, File fileObj,
+      SaveOptions options) throws IOException {
+    ImageWriter writer = ImageWriterPool.borrow(formatName);
+    if (writer == null) {
+      return false;
+    }
+
+    try {
+      // such as WBMP, which only encodes images of one bit per pixel
+      if (writer.getOriginatingProvider() != null
+          && !writer.getOriginatingProvider().canEncodeImage(bufferedImage)) {
+        return false;
+      }
+
+      fileObj.delete();
+      try (ImageOutputStream output = ImageIO.createImageOutputStream(fileObj)) {
+        if (output == null) {
+          throw new IOException("ERROR: unable to write to file.");
+        }
+        writer.setOutput(output);
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+          if (formatName.equals("jpg") || formatName.equals("jpeg")) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(options.getJPEGQuality());
+          } else if (formatName.equals("png")
+              && options.getPNGCompressionLevel() != SaveOptions.DEFAULT_PNG_COMPRESSION_LEVEL) {
+            // ImageIO maps quality q to deflate level 9 - round(9 * q)
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality((9 - options.getPNGCompressionLevel()) / 9f);
+          }
+        }
+
+        writer.write(null, new IIOImage(bufferedImage, null, null), param);
+      }
+    } finally {
+      ImageWriterPool.release(formatName, writer);
+    }
+    return true;
+  }
+
+  /**
+   * Determines whether building a full BufferedImage (and a copy of the pixels to fill it) for the
+   * given image would take too large a share of the heap, in which case it should be streamed to
+   * its file one strip of rows at a time instead.
+   *
+   * @param image          the image to save
+   * @param thresholdBytes the size of BufferedImage above which to stream, or -1 for an eighth of
+   *                       the maximum heap
+   * @return true if the image should be streamed
+   */
+  static boolean isTooLargeToBuffer(Image image, long thresholdBytes) {
+    long bufferedBytes = (long) image.width() * image.height() * 4;
+    if (thresholdBytes == SaveOptions.DEFAULT_STREAM_THRESHOLD_BYTES) {
+      thresholdBytes = Runtime.getRuntime().maxMemory() / 8;
+    }
+    return bufferedBytes > thresholdBytes;
+  }
+
   /**
    * Gets the buffered image of an image
    * @param image to get buffered image of
@@ -113,8 +217,6 @@ class ImageWriteUtil {
     Objects.requireNonNull(image);
     Objects.requireNonNull(filepath);
 
-    ArrayList<ArrayList<Pixel>> pixels = image.pixels();
-
     if (filepath.length() < 4 || !filepath.substring(filepath.length() - 4, filepath.length())
         .equals(".ppm")) {
       throw new IllegalArgumentException("Filepath must end in .ppm");
@@ -132,24 +234,8 @@ class ImageWriteUtil {
       }
     }
 
-    StringBuilder ppmData = new StringBuilder(
-        String.format(
-            "%s\n%d\n%d\n%d\n",
-            "P3",
-            pixels.get(0).size(),
-            pixels.size(),
-            pixels.get(0).get(0).byteSize()));
-
-    int i = 1;
-    for (ArrayList<Pixel> row : pixels) {
-      i++;
-      for (Pixel pixel : row) {
-        ppmData.append(pixel.toString() + "\n");
-      }
-    }
-
     try {
-      (new FileWriter(filepath, false).append(ppmData.toString())).close();
+      ImageStreamWriteUtil.writePPM(image, filepath);
     } catch (Exception e) {
       throw new IOException("ERROR: unable to write to file.");
     }
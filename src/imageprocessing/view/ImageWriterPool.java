@@ -0,0 +1,100 @@
+package imageprocessing.view;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+
+/**
+ * The {@code ImageWriterPool} keeps ImageIO writers around between saves, so that saving many
+ * files in a row does not look up a writer in the service registry and build fresh writer state
+ * for every file. Writers are handed out to one caller at a time, so the pool can be shared by
+ * threads.
+ */
+class ImageWriterPool {
+
+  /**
+   * Most idle writers kept for each format.
+   */
+  private static final int MAX_IDLE_PER_FORMAT = Runtime.getRuntime().availableProcessors();
+
+  private static final Map<String, Queue<ImageWriter>> IDLE_WRITERS = new ConcurrentHashMap<>();
+
+  private static volatile List<String> writerSuffixes;
+
+  /**
+   * Takes a writer for the given format from the pool, creating one if none are idle.
+   *
+   * @param formatName the informal format name, such as "png"
+   * @return a writer that only the caller is using, or null if ImageIO cannot write the format
+   */
+  public static ImageWriter borrow(String formatName) {
+    ImageWriter writer = ImageWriterPool.idle(formatName).poll();
+    if (writer != null) {
+      return writer;
+    }
+
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+    return writers.hasNext() ? writers.next() : null;
+  }
+
+  /**
+   * Gives a borrowed writer back to the pool, clearing its output and state.
+   *
+   * @param formatName the informal format name the writer was borrowed for
+   * @param writer     the writer to give back
+   */
+  public static void release(String formatName, ImageWriter writer) {
+    if (writer == null) {
+      return;
+    }
+
+    try {
+      writer.reset();
+    } catch (Exception e) {
+      writer.dispose();
+      return;
+    }
+
+    Queue<ImageWriter> idle = ImageWriterPool.idle(formatName);
+    if (idle.size() < MAX_IDLE_PER_FORMAT) {
+      idle.offer(writer);
+    } else {
+      writer.dispose();
+    }
+  }
+
+  /**
+   * Gets the file suffixes ImageIO can write, looking them up only once. ImageIO lists them in an
+   * order that can change from run to run and from thread to thread, so they are sorted.
+   *
+   * @return the suffixes, without leading dots, in alphabetical order
+   */
+  public static List<String> writerSuffixes() {
+    List<String> suffixes = ImageWriterPool.writerSuffixes;
+    if (suffixes == null) {
+      String[] sorted = ImageIO.getWriterFileSuffixes();
+      Arrays.sort(sorted);
+      suffixes = Collections.unmodifiableList(Arrays.asList(sorted));
+      ImageWriterPool.writerSuffixes = suffixes;
+    }
+    return suffixes;
+  }
+
+  /**
+   * Gets the queue of idle writers for a format.
+   *
+   * @param formatName the informal format name
+   * @return the queue of idle writers
+   */
+  private static Queue<ImageWriter> idle(String formatName) {
+    return IDLE_WRITERS.computeIfAbsent(formatName, name -> new ConcurrentLinkedQueue<>());
+  }
+}
@@ -14,6 +14,7 @@ import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import imageprocessing.controller.SwingAppFeatures;
+import imageprocessing.model.CommandMonitor;
 import imageprocessing.model.Image;
 import imageprocessing.model.ImageProcessingModel;
 
@@ -118,6 +119,16 @@ public class MockSwingView extends JFrame implements ImageProcessingSwingView, A
             MockSwingView.WIDTH / 70,
             this));
 
+    // load scaled/region buttons
+    loadSavePanel.add(new Button("Load Scaled",
+            MockSwingView.LOAD_BUTTON_DIMENSION,
+            MockSwingView.WIDTH / 70,
+            this));
+    loadSavePanel.add(new Button("Load Region",
+            MockSwingView.LOAD_BUTTON_DIMENSION,
+            MockSwingView.WIDTH / 70,
+            this));
+
     // padding between load and save buttons
     JPanel loadSavePadding = new JPanel();
     loadSavePadding.setMaximumSize(new Dimension(MockSwingView.LOAD_BUTTON_DIMENSION.width,
@@ -258,6 +269,16 @@ public class MockSwingView extends JFrame implements ImageProcessingSwingView, A
     this.repaint();
   }
 
+  @Override
+  public void showWorkStarted(String description, CommandMonitor monitor) {
+    // work is not shown
+  }
+
+  @Override
+  public void showWorkFinished() {
+    // work is not shown
+  }
+
   @Override
   public String getFrom() {
     return "image";
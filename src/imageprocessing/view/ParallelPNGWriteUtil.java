@@ -0,0 +1,247 @@
+package imageprocessing.view;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import imageprocessing.model.Image;
+import imageprocessing.model.Pixel;
+
+/**
+ * This class contains utility methods to write PNG files using every processor. The image is cut
+ * into groups of rows which are filtered and deflated in parallel, each group primed with the last
+ * 32K of the group before it and ended with a sync flush, so that the compressed groups join into a
+ * single valid zlib stream.
+ */
+class ParallelPNGWriteUtil {
+
+  /**
+   * Approximate number of filtered bytes in each group of rows compressed by one task.
+   */
+  private static final int GROUP_BYTES = 1 << 17;
+
+  /**
+   * Size of the deflate window, and so of the dictionary each group is primed with.
+   */
+  private static final int WINDOW_BYTES = 1 << 15;
+
+  /**
+   * Maximum number of groups being filtered, compressed, or waiting to be written at once.
+   */
+  private static final int GROUPS_IN_FLIGHT =
+      2 * Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Writes the given image to file as an 8 bit RGB PNG, compressing groups of rows in parallel.
+   *
+   * @param image            to write to file
+   * @param filepath         filepath of the file to write
+   * @param compressionLevel the deflate level, 0 to 9, or -1 for the default
+   * @throws IOException          if unable to write to file
+   * @throws NullPointerException if null args
+   */
+  public static void writePNG(Image image, String filepath, int compressionLevel)
+      throws IOException, NullPointerException {
+    Objects.requireNonNull(image);
+    Objects.requireNonNull(filepath);
+
+    int width = image.width();
+    int height = image.height();
+    int rowsPerGroup = Math.max(1, GROUP_BYTES / (width * 3 + 1));
+    int groupCount = (height + rowsPerGroup - 1) / rowsPerGroup;
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(filepath), 1 << 16))) {
+      ImageStreamWriteUtil.writePNGHeader(out, width, height);
+
+      ImageStreamWriteUtil.PNGChunkOutputStream idat =
+          new ImageStreamWriteUtil.PNGChunkOutputStream(out, "IDAT");
+      // zlib header: deflate with a 32K window, no preset dictionary
+      idat.write(0x78);
+      idat.write(0x9c);
+
+      ArrayDeque<CompletableFuture<CompressedGroup>> pending = new ArrayDeque<>();
+      CompletableFuture<byte[]> previousFiltered = CompletableFuture.completedFuture(null);
+      long adler = 1;
+      int nextGroup = 0;
+      for (int written = 0; written < groupCount; written++) {
+        // keep a bounded number of groups in flight ahead of the writer
+        while (nextGroup < groupCount && pending.size() < GROUPS_IN_FLIGHT) {
+          int firstRow = nextGroup * rowsPerGroup;
+          int rowCount = Math.min(rowsPerGroup, height - firstRow);
+          boolean last = nextGroup == groupCount - 1;
+
+          CompletableFuture<byte[]> filtered = CompletableFuture.supplyAsync(
+              () -> ParallelPNGWriteUtil.filterRows(image, firstRow, rowCount));
+          pending.add(filtered.thenCombineAsync(previousFiltered,
+              (data, dictionary) -> ParallelPNGWriteUtil.compress(
+                  data, dictionary, compressionLevel, last)));
+          previousFiltered = filtered;
+          nextGroup++;
+        }
+
+        CompressedGroup group;
+        try {
+          group = pending.poll().join();
+        } catch (CompletionException e) {
+          if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          }
+          throw new IOException("ERROR: unable to compress image.", e.getCause());
+        }
+        idat.write(group.data, 0, group.length);
+        adler = ParallelPNGWriteUtil.combineAdler32(adler, group.adler, group.inputLength);
+      }
+
+      idat.write((int) (adler >>> 24));
+      idat.write((int) (adler >>> 16));
+      idat.write((int) (adler >>> 8));
+      idat.write((int) adler);
+      idat.close();
+
+      ImageStreamWriteUtil.writePNGChunk(out, "IEND", new byte[0], 0);
+    }
+  }
+
+  /**
+   * Filters a group of rows for PNG. The row above the group is pulled as well, since the PNG
+   * filters of the group's first row depend on it.
+   *
+   * @param image    the image to filter
+   * @param firstRow the first row of the group
+   * @param rowCount the number of rows in the group
+   * @return the filtered rows, each starting with its filter type byte
+   */
+  private static byte[] filterRows(Image image, int firstRow, int rowCount) {
+    int rowBytes = image.width() * 3;
+    int above = firstRow > 0 ? 1 : 0;
+    ArrayList<ArrayList<Pixel>> rows = image.rows(firstRow - above, rowCount + above);
+
+    byte[] previous = new byte[rowBytes];
+    byte[] current = new byte[rowBytes];
+    byte[] line = new byte[rowBytes + 1];
+    byte[] filtered = new byte[rowCount * (rowBytes + 1)];
+    if (above == 1) {
+      ImageStreamWriteUtil.toRGBBytes(rows.get(0), previous);
+    }
+    for (int i = 0; i < rowCount; i++) {
+      ImageStreamWriteUtil.toRGBBytes(rows.get(i + above), current);
+      ImageStreamWriteUtil.filterPNGRow(current, previous, line);
+      System.arraycopy(line, 0, filtered, i * line.length, line.length);
+      byte[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return filtered;
+  }
+
+  /**
+   * Deflates one group of filtered rows as raw deflate blocks. Every group but the last ends with a
+   * sync flush, so that the next group's blocks can follow it directly.
+   *
+   * @param data             the filtered rows of the group
+   * @param dictionary       the filtered rows of the previous group, or null for the first group
+   * @param compressionLevel the deflate level
+   * @param last             whether this is the last group of the image
+   * @return the compressed group
+   */
+  private static CompressedGroup compress(byte[] data, byte[] dictionary, int compressionLevel,
+      boolean last) {
+    Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      if (dictionary != null) {
+        int length = Math.min(WINDOW_BYTES, dictionary.length);
+        deflater.setDictionary(dictionary, dictionary.length - length, length);
+      }
+      deflater.setInput(data);
+      if (last) {
+        deflater.finish();
+      }
+
+      byte[] output = new byte[data.length / 2 + 64];
+      int length = 0;
+      while (true) {
+        if (length == output.length) {
+          output = Arrays.copyOf(output, output.length * 2);
+        }
+        int count = deflater.deflate(output, length, output.length - length,
+            last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+        length += count;
+        if (last ? deflater.finished() : length < output.length) {
+          break;
+        }
+      }
+
+      Adler32 adler = new Adler32();
+      adler.update(data);
+      return new CompressedGroup(output, length, adler.getValue(), data.length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Combines the Adler-32 checksums of two consecutive pieces of data into the checksum of both.
+   *
+   * @param adler1  checksum of the first piece
+   * @param adler2  checksum of the second piece
+   * @param length2 length of the second piece
+   * @return checksum of the first piece followed by the second
+   */
+  static long combineAdler32(long adler1, long adler2, long length2) {
+    final long base = 65521;
+    long remainder = length2 % base;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (remainder * sum1) % base;
+    sum1 += (adler2 & 0xffff) + base - 1;
+    sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - remainder;
+    if (sum1 >= base) {
+      sum1 -= base;
+    }
+    if (sum1 >= base) {
+      sum1 -= base;
+    }
+    if (sum2 >= (base << 1)) {
+      sum2 -= (base << 1);
+    }
+    if (sum2 >= base) {
+      sum2 -= base;
+    }
+    return sum1 | (sum2 << 16);
+  }
+
+  /**
+   * The compressed data of one group of rows, with the checksum of its uncompressed data.
+   */
+  private static class CompressedGroup {
+
+    private final byte[] data;
+    private final int length;
+    private final long adler;
+    private final int inputLength;
+
+    /**
+     * Instantiates this group.
+     *
+     * @param data        buffer holding the compressed data
+     * @param length      number of compressed bytes in the buffer
+     * @param adler       Adler-32 checksum of the uncompressed data
+     * @param inputLength number of uncompressed bytes
+     */
+    CompressedGroup(byte[] data, int length, long adler, int inputLength) {
+      this.data = data;
+      this.length = length;
+      this.adler = adler;
+      this.inputLength = inputLength;
+    }
+  }
+}
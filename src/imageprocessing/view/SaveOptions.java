@@ -0,0 +1,129 @@
+package imageprocessing.view;
+
+/**
+ * The {@code SaveOptions} represent the choices of encoder, and the encoder parameters, used when a
+ * view saves an image to a file.
+ */
+public class SaveOptions {
+
+  /**
+   * PNG compression level that lets the encoder pick its own.
+   */
+  public static final int DEFAULT_PNG_COMPRESSION_LEVEL = -1;
+
+  /**
+   * JPEG quality used by ImageIO when none is given.
+   */
+  public static final float DEFAULT_JPEG_QUALITY = 0.75f;
+
+  /**
+   * Streaming threshold that streams images whose BufferedImage would take more than an eighth of
+   * the maximum heap.
+   */
+  public static final long DEFAULT_STREAM_THRESHOLD_BYTES = -1;
+
+  private final boolean parallelPNG;
+  private final int pngCompressionLevel;
+  private final float jpegQuality;
+  private final long streamThresholdBytes;
+
+  /**
+   * Instantiates these options with the default choices: PNG files are saved with ImageIO at the
+   * default level, and JPEG files use the default quality.
+   */
+  public SaveOptions() {
+    this(false);
+  }
+
+  /**
+   * Instantiates these options with the given choice of PNG encoder and default parameters.
+   *
+   * @param parallelPNG whether to save PNG files with the built in parallel encoder instead of
+   *                    ImageIO
+   */
+  public SaveOptions(boolean parallelPNG) {
+    this(parallelPNG, SaveOptions.DEFAULT_PNG_COMPRESSION_LEVEL, SaveOptions.DEFAULT_JPEG_QUALITY);
+  }
+
+  /**
+   * Instantiates these options with the given choices.
+   *
+   * @param parallelPNG         whether to save PNG files with the built in parallel encoder
+   *                            instead of ImageIO
+   * @param pngCompressionLevel the deflate level for PNG files, from 0 (fastest) to 9 (smallest),
+   *                            or -1 for the encoder's default
+   * @param jpegQuality         the quality of JPEG files, from 0 (smallest) to 1 (best)
+   * @throws IllegalArgumentException if the level or quality is out of range
+   */
+  public SaveOptions(boolean parallelPNG, int pngCompressionLevel, float jpegQuality)
+      throws IllegalArgumentException {
+    this(parallelPNG, pngCompressionLevel, jpegQuality,
+        SaveOptions.DEFAULT_STREAM_THRESHOLD_BYTES);
+  }
+
+  /**
+   * Instantiates these options with the given choices, including when PPM, BMP and PNG files are
+   * written one strip of rows at a time instead of through a full BufferedImage.
+   *
+   * @param parallelPNG          whether to save PNG files with the built in parallel encoder
+   *                             instead of ImageIO
+   * @param pngCompressionLevel  the deflate level for PNG files, from 0 (fastest) to 9
+   *                             (smallest), or -1 for the encoder's default
+   * @param jpegQuality          the quality of JPEG files, from 0 (smallest) to 1 (best)
+   * @param streamThresholdBytes the size of BufferedImage above which images are streamed, or -1
+   *                             for an eighth of the maximum heap
+   * @throws IllegalArgumentException if the level, quality or threshold is out of range
+   */
+  public SaveOptions(boolean parallelPNG, int pngCompressionLevel, float jpegQuality,
+      long streamThresholdBytes) throws IllegalArgumentException {
+    if (pngCompressionLevel < -1 || pngCompressionLevel > 9) {
+      throw new IllegalArgumentException("PNG compression level must be between 0 and 9, or -1.");
+    }
+    if (jpegQuality < 0 || jpegQuality > 1) {
+      throw new IllegalArgumentException("JPEG quality must be between 0 and 1.");
+    }
+    if (streamThresholdBytes < -1) {
+      throw new IllegalArgumentException("Stream threshold must be at least 0, or -1.");
+    }
+    this.parallelPNG = parallelPNG;
+    this.pngCompressionLevel = pngCompressionLevel;
+    this.jpegQuality = jpegQuality;
+    this.streamThresholdBytes = streamThresholdBytes;
+  }
+
+  /**
+   * Determines whether PNG files should be saved with the built in parallel encoder.
+   *
+   * @return true if PNG files are compressed in parallel
+   */
+  public boolean isParallelPNG() {
+    return this.parallelPNG;
+  }
+
+  /**
+   * Gets the deflate level used for PNG files.
+   *
+   * @return the level from 0 to 9, or -1 for the encoder's default
+   */
+  public int getPNGCompressionLevel() {
+    return this.pngCompressionLevel;
+  }
+
+  /**
+   * Gets the quality used for JPEG files.
+   *
+   * @return the quality from 0 to 1
+   */
+  public float getJPEGQuality() {
+    return this.jpegQuality;
+  }
+
+  /**
+   * Gets the size of BufferedImage above which PPM, BMP and PNG files are streamed.
+   *
+   * @return the threshold in bytes, or -1 for an eighth of the maximum heap
+   */
+  public long getStreamThresholdBytes() {
+    return this.streamThresholdBytes;
+  }
+}
@@ -19,8 +19,10 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
@@ -28,6 +30,7 @@ import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import imageprocessing.controller.SwingAppFeatures;
+import imageprocessing.model.CommandMonitor;
 import imageprocessing.model.Image;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.model.Pixel;
@@ -43,6 +46,11 @@ public class SwingView extends JFrame implements ImageProcessingSwingView, Actio
   private SwingAppFeatures features;
   private JLabel imageLabel;
   private final JComboBox imageOptions;
+  private final JProgressBar progressBar;
+  private final Button cancelButton;
+  private final Timer progressTimer;
+  private String workDescription;
+  private CommandMonitor workMonitor;
 
   public static final int WIDTH = 9 * Toolkit.getDefaultToolkit().getScreenSize().width / 10;
   public static final int HEIGHT = 8 * Toolkit.getDefaultToolkit().getScreenSize().height / 10;
@@ -133,6 +141,16 @@ public class SwingView extends JFrame implements ImageProcessingSwingView, Actio
             SwingView.WIDTH / 70,
             this));
 
+    // load scaled/region buttons
+    loadSavePanel.add(new Button("Load Scaled",
+            SwingView.LOAD_BUTTON_DIMENSION,
+            SwingView.WIDTH / 70,
+            this));
+    loadSavePanel.add(new Button("Load Region",
+            SwingView.LOAD_BUTTON_DIMENSION,
+            SwingView.WIDTH / 70,
+            this));
+
     // padding between load and save buttons
     JPanel loadSavePadding = new JPanel();
     loadSavePadding.setMaximumSize(new Dimension(SwingView.LOAD_BUTTON_DIMENSION.width,
@@ -166,6 +184,20 @@ public class SwingView extends JFrame implements ImageProcessingSwingView, Actio
     imageOptions.addActionListener(this);
     loadSavePanel.add(imageOptions);
 
+    // progress of work in the background, shown only while there is some
+    progressBar = new JProgressBar();
+    progressBar.setStringPainted(true);
+    progressBar.setMaximumSize(new Dimension(SwingView.WIDTH / 5, SwingView.HEIGHT / 30));
+    progressBar.setVisible(false);
+    loadSavePanel.add(progressBar);
+    cancelButton = new Button("Cancel",
+            SwingView.LOAD_BUTTON_DIMENSION,
+            SwingView.WIDTH / 70,
+            this);
+    cancelButton.setVisible(false);
+    loadSavePanel.add(cancelButton);
+    progressTimer = new Timer(100, e -> this.showProgress());
+
     // panels for processing buttons
     JPanel panel2 = new JPanel();
     panel2.setBackground(SwingView.BACKGROUND_COLOR);
@@ -275,6 +307,47 @@ public class SwingView extends JFrame implements ImageProcessingSwingView, Actio
     this.repaint();
   }
 
+  @Override
+  public void showWorkStarted(String description, CommandMonitor monitor) {
+    this.workDescription = description;
+    this.workMonitor = monitor;
+    this.showProgress();
+    this.progressBar.setVisible(true);
+    this.cancelButton.setVisible(monitor != null);
+    this.progressTimer.start();
+    this.refresh();
+  }
+
+  @Override
+  public void showWorkFinished() {
+    this.progressTimer.stop();
+    this.progressBar.setVisible(false);
+    this.cancelButton.setVisible(false);
+    this.workMonitor = null;
+    this.refresh();
+  }
+
+  /**
+   * Shows how many rows the work in the background has done, and about how long it has left, read
+   * from its monitor. The monitor is read on a timer rather than told to push its progress, so the
+   * thread doing the work never waits on the event thread.
+   */
+  private void showProgress() {
+    CommandMonitor monitor = this.workMonitor;
+    if (monitor == null || monitor.rows() == 0) {
+      this.progressBar.setIndeterminate(true);
+      this.progressBar.setString(this.workDescription);
+      return;
+    }
+    this.progressBar.setIndeterminate(false);
+    this.progressBar.setMaximum(monitor.rows());
+    this.progressBar.setValue(monitor.rowsDone());
+    long remainingMillis = monitor.remainingMillis();
+    this.progressBar.setString(this.workDescription + ": " + monitor.rowsDone() + " of "
+        + monitor.rows() + " rows"
+        + (remainingMillis < 0 ? "" : ", about " + (remainingMillis + 999) / 1000 + " s left"));
+  }
+
   @Override
   public String getFrom() {
     return (String) this.imageOptions.getSelectedItem();
@@ -3,9 +3,12 @@ package imageprocessing.view;
 import imageprocessing.model.BasicImageProcessingModel;
 import imageprocessing.model.Image;
 import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ProgressListener;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * the {@code TextScriptImageProcessingView} represent the view method for the image processing
@@ -17,6 +20,7 @@ public class TextScriptImageProcessingView implements ImageProcessingView {
 
   private final Appendable appendable;
   private final ImageProcessingModel model;
+  private final SaveOptions saveOptions;
 
   /**
    * the Constructor for TextScriptImageProcessingView.
@@ -26,8 +30,22 @@ public class TextScriptImageProcessingView implements ImageProcessingView {
    */
   public TextScriptImageProcessingView(Appendable appendable, ImageProcessingModel model)
       throws NullPointerException {
+    this(appendable, model, new SaveOptions());
+  }
+
+  /**
+   * the Constructor for TextScriptImageProcessingView, choosing how images are encoded when saved.
+   *
+   * @param appendable  the appendable for the view
+   * @param model       the model for the image processing model
+   * @param saveOptions the choice of encoders used to save images
+   * @throws NullPointerException if null args
+   */
+  public TextScriptImageProcessingView(Appendable appendable, ImageProcessingModel model,
+      SaveOptions saveOptions) throws NullPointerException {
     this.appendable = Objects.requireNonNull(appendable);
     this.model = Objects.requireNonNull(model);
+    this.saveOptions = Objects.requireNonNull(saveOptions);
   }
 
   /**
@@ -65,7 +83,56 @@ public class TextScriptImageProcessingView implements ImageProcessingView {
   @Override
   public Void saveImageToFile(Image image, String filepath)
       throws IllegalArgumentException, IOException {
-    ImageWriteUtil.writePixelsToFile(image, filepath);
+    ImageWriteUtil.writePixelsToFile(image, filepath, this.saveOptions);
     return null;
   }
+
+  /**
+   * Makes a listener that renders how far along a command is, such as
+   * {@code ... Progress: 40% of 3000 rows, about 2 s left ...}, at most once per the given
+   * interval. Nothing is rendered for a command done within the interval, so quick commands render
+   * the same messages as without it; a command that was reported on renders a last line when it
+   * reaches its last row. The listener is meant for one command at a time.
+   *
+   * @param intervalMillis the least time between lines, in milliseconds
+   * @return the listener, which throws an {@link UncheckedIOException} if unable to render
+   * @throws IllegalArgumentException if the interval is not positive
+   */
+  public ProgressListener progressListener(long intervalMillis) throws IllegalArgumentException {
+    if (intervalMillis <= 0) {
+      throw new IllegalArgumentException("Progress interval must be positive.");
+    }
+    long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    return new ProgressListener() {
+      private long lastRendered;
+      private boolean rendered;
+
+      @Override
+      public void progressed(int rowsDone, int rows, long remainingMillis) {
+        long now = System.nanoTime();
+        if (rowsDone == 0) {
+          // a command is starting
+          this.lastRendered = now;
+          this.rendered = false;
+          return;
+        }
+        boolean last = rowsDone == rows;
+        if (last ? !this.rendered : now - this.lastRendered < intervalNanos) {
+          return;
+        }
+        this.lastRendered = now;
+        this.rendered = true;
+        StringBuilder line = new StringBuilder("... Progress: ")
+            .append(100L * rowsDone / rows).append("% of ").append(rows).append(" rows");
+        if (!last && remainingMillis >= 0) {
+          line.append(", about ").append((remainingMillis + 999) / 1000).append(" s left");
+        }
+        try {
+          TextScriptImageProcessingView.this.renderMessage(line.append(" ...\n").toString());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
 }
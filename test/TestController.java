@@ -1,16 +1,50 @@
+import imageprocessing.controller.BatchScriptController;
+import imageprocessing.controller.HttpProcessingController;
+import imageprocessing.controller.PlannedScriptController;
+import imageprocessing.controller.ScriptDaemonController;
+import imageprocessing.controller.ScriptOptions;
+import imageprocessing.controller.ScriptPlan;
 import imageprocessing.controller.SwingAppFeatures;
 import imageprocessing.controller.SwingController;
 import imageprocessing.controller.TextScriptedImageProcessingController;
+import imageprocessing.controller.WatchFolderController;
 import imageprocessing.view.ImageProcessingSwingView;
 import imageprocessing.view.MockSwingView;
 import imageprocessing.view.TextScriptImageProcessingView;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.swing.SwingUtilities;
+
+import imageprocessing.model.BasicImage;
 import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.ConcurrentImageProcessingModel;
+import imageprocessing.model.Commands.HorizontalFlipCommand;
+import imageprocessing.model.Commands.VerticalFlipCommand;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.model.MockImageProcessingModel;
 
@@ -161,6 +195,8 @@ public class TestController {
             "Enter 'q' to quite. Enter 'help' for a list of commands\n" +
             "Commands to try:\n" +
             "   load IMAGE-PATH IMAGE-NAME\n" +
+            "   load-scaled IMAGE-PATH IMAGE-NAME FACTOR\n" +
+            "   load-region IMAGE-PATH IMAGE-NAME X Y WIDTH HEIGHT\n" +
             "   save IMAGE-NAME IMAGE-PATH\n" +
             "   red-component IMAGE-NAME DEST-IMAGE-NAME\n" +
             "   blue-component IMAGE-NAME DEST-IMAGE-NAME\n" +
@@ -178,6 +214,8 @@ public class TestController {
             "   sepia IMAGE-NAME DEST-IMAGE-NAME\n" +
             "Commands to try:\n" +
             "   load IMAGE-PATH IMAGE-NAME\n" +
+            "   load-scaled IMAGE-PATH IMAGE-NAME FACTOR\n" +
+            "   load-region IMAGE-PATH IMAGE-NAME X Y WIDTH HEIGHT\n" +
             "   save IMAGE-NAME IMAGE-PATH\n" +
             "   red-component IMAGE-NAME DEST-IMAGE-NAME\n" +
             "   blue-component IMAGE-NAME DEST-IMAGE-NAME\n" +
@@ -195,6 +233,8 @@ public class TestController {
             "   sepia IMAGE-NAME DEST-IMAGE-NAME\n" +
             "Commands to try:\n" +
             "   load IMAGE-PATH IMAGE-NAME\n" +
+            "   load-scaled IMAGE-PATH IMAGE-NAME FACTOR\n" +
+            "   load-region IMAGE-PATH IMAGE-NAME X Y WIDTH HEIGHT\n" +
             "   save IMAGE-NAME IMAGE-PATH\n" +
             "   red-component IMAGE-NAME DEST-IMAGE-NAME\n" +
             "   blue-component IMAGE-NAME DEST-IMAGE-NAME\n" +
@@ -237,6 +277,569 @@ public class TestController {
         this.mockOutput.toString());
   }
 
+  /**
+   * Test that saving in the background produces the same view output as saving right away, and
+   * that a load of the saved file waits for the save to finish.
+   */
+  @Test
+  public void testLoadAndSaveInBackground() throws IOException {
+    this.setUp("load res/square.ppm square save square testRes/square-async.png "
+        + "load testRes/square-async.png squareAsync save BAD testRes/bad.png q\n");
+    this.controller = new TextScriptedImageProcessingController(
+        this.model,
+        this.view,
+        this.mockInput,
+        2);
+    this.controller.startProcessor();
+
+    assertEquals("WELCOME TO IMAGE PROCESSOR\n" +
+            "Enter 'q' to quite. Enter 'help' for a list of commands\n" +
+            "Attempting to do load.\n" +
+            "... From: res/square.ppm ...\n" +
+            "... To: square ...\n" +
+            "Success!\n" +
+            "Attempting to do save.\n" +
+            "... From: square ...\n" +
+            "... To: testRes/square-async.png ...\n" +
+            "Success!\n" +
+            "Attempting to do load.\n" +
+            "... From: testRes/square-async.png ...\n" +
+            "... To: squareAsync ...\n" +
+            "Success!\n" +
+            "Attempting to do save.\n" +
+            "... From: BAD ...\n" +
+            "... To: testRes/bad.png ...\n" +
+            " Given image name does not exist in this processor.\n" +
+            "Bye!\n",
+        this.mockOutput.toString());
+    assertEquals(this.model.image("square").pixels().toString(),
+        this.model.image("squareAsync").pixels().toString());
+  }
+
+  /**
+   * Test that every failed background save is reported before quitting, even when a later save to
+   * the same file replaces it.
+   */
+  @Test
+  public void testSaveInBackgroundReportsEveryFailure() throws IOException {
+    this.setUp("load res/square.ppm square save square res/square.bad "
+        + "save square res/square.bad q\n");
+    this.controller = new TextScriptedImageProcessingController(
+        this.model,
+        this.view,
+        this.mockInput,
+        1);
+    this.controller.startProcessor();
+
+    String output = this.mockOutput.toString();
+    assertEquals(2, output.split("Unable to save res/square.bad: ", -1).length - 1);
+    assertEquals(true, output.endsWith("Bye!\n"));
+  }
+
+  /**
+   * Test that reading the script ahead to prefetch loads does not change the view output, does not
+   * change how a bad integer is read, and does not load a file before an earlier save to it.
+   */
+  @Test
+  public void testLoadWithLookahead() throws IOException {
+    this.setUp("load res/square.ppm square horizontal-flip square squareFlip "
+        + "save squareFlip testRes/square-lookahead.ppm "
+        + "load testRes/square-lookahead.ppm squareLoaded brighten x q\n");
+    this.controller = new TextScriptedImageProcessingController(
+        this.model,
+        this.view,
+        this.mockInput,
+        new ScriptOptions(0, 16));
+    this.controller.startProcessor();
+
+    assertEquals("WELCOME TO IMAGE PROCESSOR\n" +
+            "Enter 'q' to quite. Enter 'help' for a list of commands\n" +
+            "Attempting to do load.\n" +
+            "... From: res/square.ppm ...\n" +
+            "... To: square ...\n" +
+            "Success!\n" +
+            "Attempting to do horizontal-flip.\n" +
+            "... From: square ...\n" +
+            "... To: squareFlip ...\n" +
+            "Success!\n" +
+            "Attempting to do save.\n" +
+            "... From: squareFlip ...\n" +
+            "... To: testRes/square-lookahead.ppm ...\n" +
+            "Success!\n" +
+            "Attempting to do load.\n" +
+            "... From: testRes/square-lookahead.ppm ...\n" +
+            "... To: squareLoaded ...\n" +
+            "Success!\n" +
+            "Attempting to do brighten.\n" +
+            " First field must be an integer.\n" +
+            "Attempting to do x.\n" +
+            "Command x not identified.\n" +
+            "Bye!\n",
+        this.mockOutput.toString());
+    assertEquals(this.model.image("squareFlip").pixels().toString(),
+        this.model.image("squareLoaded").pixels().toString());
+  }
+
+  /**
+   * Test that running a script as a plan on several threads produces the same view output and
+   * images as running it line by line, including overwritten names, failed commands, and a load of
+   * a file saved earlier in the script.
+   */
+  @Test
+  public void testPlannedScriptMatchesTextController() throws IOException {
+    String script = "load res/square.ppm square red-component square a "
+        + "blur square b sharpen a a help save a testRes/square-planned.ppm "
+        + "horizontal-flip b a load testRes/square-planned.ppm c brighten x "
+        + "save missing testRes/missing.ppm vertical-flip c d q\n";
+    this.setUp(script);
+    this.controller.startProcessor();
+
+    StringBuilder plannedOutput = new StringBuilder();
+    ImageProcessingModel plannedModel = new BasicImageProcessingModel();
+    new PlannedScriptController(plannedModel,
+        new TextScriptImageProcessingView(plannedOutput, plannedModel),
+        new StringReader(script), 4).startProcessor();
+
+    assertEquals(this.mockOutput.toString(), plannedOutput.toString());
+    for (String name : new String[]{"square", "a", "b", "c", "d"}) {
+      assertEquals(this.model.image(name).pixels().toString(),
+          plannedModel.image(name).pixels().toString());
+    }
+  }
+
+  /**
+   * Test that a script run with unused results skipped skips only the commands whose destination
+   * is never read by a later command or save, and reports them.
+   */
+  @Test
+  public void testPlannedScriptSkipsUnusedResults() throws IOException {
+    this.setUp("");
+    new PlannedScriptController(this.model, this.view, new StringReader(
+        "load res/square.ppm square blur square a sharpen square b "
+            + "red-component b b save b testRes/square-optimized.ppm "
+            + "blur square b load res/square.ppm x blur missing x "
+            + "save x testRes/square-kept.ppm q\n"), 1, true).startProcessor();
+
+    assertEquals("WELCOME TO IMAGE PROCESSOR\n" +
+            "Enter 'q' to quite. Enter 'help' for a list of commands\n" +
+            "Attempting to do load.\n" +
+            "... From: res/square.ppm ...\n" +
+            "... To: square ...\n" +
+            "Success!\n" +
+            "Attempting to do blur.\n" +
+            "... From: square ...\n" +
+            "... To: a ...\n" +
+            "Skipped, the result is never used.\n" +
+            "Attempting to do sharpen.\n" +
+            "... From: square ...\n" +
+            "... To: b ...\n" +
+            "Success!\n" +
+            "Attempting to do red-component.\n" +
+            "... From: b ...\n" +
+            "... To: b ...\n" +
+            "Success!\n" +
+            "Attempting to do save.\n" +
+            "... From: b ...\n" +
+            "... To: testRes/square-optimized.ppm ...\n" +
+            "Success!\n" +
+            "Attempting to do blur.\n" +
+            "... From: square ...\n" +
+            "... To: b ...\n" +
+            "Skipped, the result is never used.\n" +
+            "Attempting to do load.\n" +
+            "... From: res/square.ppm ...\n" +
+            "... To: x ...\n" +
+            "Success!\n" +
+            "Attempting to do blur.\n" +
+            "... From: missing ...\n" +
+            "... To: x ...\n" +
+            " Given image name does not exist in this processor.\n" +
+            "Attempting to do save.\n" +
+            "... From: x ...\n" +
+            "... To: testRes/square-kept.ppm ...\n" +
+            "Success!\n" +
+            "Bye!\n",
+        this.mockOutput.toString());
+    // the blur over x failed, so the save still writes the loaded image
+    assertEquals(new BasicImage("res/square.ppm").pixels().toString(),
+        new BasicImage("testRes/square-kept.ppm").pixels().toString());
+  }
+
+  /**
+   * Test that a script of tens of thousands of commands runs without running out of stack.
+   */
+  @Test
+  public void testVeryLongScript() throws IOException {
+    StringBuilder script = new StringBuilder("load res/square.ppm square\n");
+    for (int i = 0; i < 50000; i++) {
+      script.append("horizontal-flip square square\n");
+    }
+    this.setUp(script.append("h bad q\n").toString());
+    this.controller.startProcessor();
+
+    String output = this.mockOutput.toString();
+    assertEquals(true, output.endsWith("Attempting to do bad.\n"
+        + "Command bad not identified.\n"
+        + "Bye!\n"));
+    assertEquals(this.model.image("square").pixels().toString(),
+        new BasicImage("res/square.ppm").pixels().toString());
+  }
+
+  /**
+   * Test that a plan read once can be run again with different input and output files.
+   */
+  @Test
+  public void testReplayPlanWithParameters() throws IOException {
+    ScriptPlan plan = ScriptPlan.parse(new StringReader(
+        "load ${input} image vertical-flip image image save image ${output} q\n"));
+    assertEquals(new HashSet<>(Arrays.asList("input", "output")), plan.parameters());
+
+    String[] outputs = {"testRes/square-replay-1.ppm", "testRes/square-replay-2.png"};
+    for (String output : outputs) {
+      this.setUp("");
+      Map<String, String> parameters = new HashMap<>();
+      parameters.put("input", "res/square.ppm");
+      parameters.put("output", output);
+      plan.bind(parameters).run(this.model, this.view);
+
+      assertEquals("Attempting to do load.\n" +
+              "... From: res/square.ppm ...\n" +
+              "... To: image ...\n" +
+              "Success!\n" +
+              "Attempting to do vertical-flip.\n" +
+              "... From: image ...\n" +
+              "... To: image ...\n" +
+              "Success!\n" +
+              "Attempting to do save.\n" +
+              "... From: image ...\n" +
+              "... To: " + output + " ...\n" +
+              "Success!\n" +
+              "Bye!\n",
+          this.mockOutput.toString());
+      assertEquals(this.model.image("image").pixels().toString(),
+          new BasicImage(output).pixels().toString());
+    }
+  }
+
+  /**
+   * Test that binding a plan without a value for one of its parameters throws an error.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testReplayPlanMissingParameter() {
+    ScriptPlan.parse(new StringReader("load ${input} image q\n")).bind(new HashMap<>());
+  }
+
+  /**
+   * Test that a batch runs the script on every image of a directory, skipping other files, and
+   * transmits a line per image and a summary.
+   */
+  @Test
+  public void testBatchDirectory() throws IOException {
+    File inputDir = new File("testRes/batch-in");
+    inputDir.mkdirs();
+    Files.copy(Paths.get("res/square.ppm"), Paths.get("testRes/batch-in/a.ppm"),
+        StandardCopyOption.REPLACE_EXISTING);
+    Files.copy(Paths.get("res/square.ppm"), Paths.get("testRes/batch-in/b.ppm"),
+        StandardCopyOption.REPLACE_EXISTING);
+    Files.write(Paths.get("testRes/batch-in/notes.txt"), "not an image".getBytes());
+
+    StringBuilder output = new StringBuilder();
+    new BatchScriptController(new StringReader(
+        "load ${input} image horizontal-flip image image save image ${outputDir}/${name}.png"),
+        "testRes/batch-in", "testRes/batch-out", output, 2, 2).startProcessor();
+
+    String[] lines = output.toString().split("\n");
+    assertEquals(4, lines.length);
+    assertEquals("Processing 2 images with 2 workers.", lines[0]);
+    assertEquals(true, lines[3].startsWith("Processed 2 images (0 failed) in "));
+    for (String name : new String[]{"a", "b"}) {
+      assertEquals(new BasicImage("res/square.ppm").pixels().toString(),
+          new HorizontalFlipCommand().execute(
+              new BasicImage("testRes/batch-out/" + name + ".png")).pixels().toString());
+    }
+
+    // again, with every image on a thread of its own and its commands on one worker
+    output = new StringBuilder();
+    new BatchScriptController(new StringReader(
+        "load ${input} image vertical-flip image image save image ${outputDir}/${name}.png"),
+        "testRes/batch-in", "testRes/batch-out", output, 1, 1000, true).startProcessor();
+
+    lines = output.toString().split("\n");
+    assertEquals(4, lines.length);
+    assertEquals("Processing 2 images with a thread per image and 1 workers.", lines[0]);
+    assertEquals(true, lines[3].startsWith("Processed 2 images (0 failed) in "));
+    for (String name : new String[]{"a", "b"}) {
+      assertEquals(new BasicImage("res/square.ppm").pixels().toString(),
+          new VerticalFlipCommand().execute(
+              new BasicImage("testRes/batch-out/" + name + ".png")).pixels().toString());
+    }
+  }
+
+  /**
+   * Test that watching a directory processes the images already in it and those copied in later,
+   * until stopped.
+   */
+  @Test
+  public void testWatchFolder() throws Exception {
+    File inputDir = new File("testRes/watch-in");
+    inputDir.mkdirs();
+    for (File file : inputDir.listFiles()) {
+      file.delete();
+    }
+    new File("testRes/watch-out/a.png").delete();
+    new File("testRes/watch-out/b.png").delete();
+    Files.copy(Paths.get("res/square.ppm"), Paths.get("testRes/watch-in/a.ppm"));
+
+    StringBuilder output = new StringBuilder();
+    WatchFolderController controller = new WatchFolderController(new StringReader(
+        "load ${input} image horizontal-flip image image save image ${outputDir}/${name}.png"),
+        "testRes/watch-in", "testRes/watch-out", output, 1, 2);
+    Thread watching = new Thread(() -> {
+      try {
+        controller.startProcessor();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    watching.start();
+    waitForOutput(output, "a.ppm in ");
+    Files.copy(Paths.get("res/square.ppm"), Paths.get("testRes/watch-in/b.ppm"));
+    waitForOutput(output, "b.ppm in ");
+    controller.stop();
+    watching.join();
+
+    String[] lines = output.toString().split("\n");
+    assertEquals(4, lines.length);
+    assertEquals("Watching testRes/watch-in with 1 workers.", lines[0]);
+    assertEquals(true, lines[1].startsWith("Processed testRes/watch-in/a.ppm in "));
+    assertEquals(true, lines[2].startsWith("Processed testRes/watch-in/b.ppm in "));
+    assertEquals("Stopped watching testRes/watch-in after processing 2 images (0 failed).",
+        lines[3]);
+    for (String name : new String[]{"a", "b"}) {
+      assertEquals(new BasicImage("res/square.ppm").pixels().toString(),
+          new HorizontalFlipCommand().execute(
+              new BasicImage("testRes/watch-out/" + name + ".png")).pixels().toString());
+    }
+  }
+
+  /**
+   * Test that a script sent to the daemon renders what running it directly renders.
+   */
+  @Test
+  public void testScriptDaemon() throws Exception {
+    String script = "load res/square.ppm square blur square square "
+        + "brighten square square bad-command save square testRes/daemon.png q";
+    StringBuilder expected = new StringBuilder();
+    ImageProcessingModel model = new BasicImageProcessingModel();
+    new TextScriptedImageProcessingController(model,
+        new TextScriptImageProcessingView(expected, model),
+        new StringReader(script)).startProcessor();
+
+    StringBuilder log = new StringBuilder();
+    ScriptDaemonController daemon = new ScriptDaemonController(0, log, 2);
+    Thread running = new Thread(() -> {
+      try {
+        daemon.startProcessor();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    running.start();
+    StringBuilder output = new StringBuilder();
+    ScriptDaemonController.sendScript(new StringReader(script), daemon.getPort(), output);
+    daemon.stop();
+    running.join();
+
+    assertEquals(expected.toString(), output.toString());
+    String[] lines = log.toString().split("\n");
+    assertEquals(3, lines.length);
+    assertEquals("Listening on 127.0.0.1:" + daemon.getPort() + " with 2 workers.", lines[0]);
+    assertEquals(true, lines[1].startsWith("Ran script from port "));
+    assertEquals("Stopped.", lines[2]);
+  }
+
+  /**
+   * Test that the daemon writes its token to a file only its owner can read, turns away a client
+   * without the token without running its script, and deletes the token when stopped.
+   */
+  @Test
+  public void testScriptDaemonRejectsClientsWithoutToken() throws Exception {
+    Path tokenFile = Paths.get("testRes/daemon.token");
+    StringBuilder log = new StringBuilder();
+    ScriptDaemonController daemon = new ScriptDaemonController(0, log, 1, tokenFile);
+    Thread running = new Thread(() -> {
+      try {
+        daemon.startProcessor();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    running.start();
+    if (tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      assertEquals("rw-------",
+          PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)));
+    }
+
+    File saved = new File("testRes/daemon-rejected.ppm");
+    saved.delete();
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+      socket.getOutputStream().write(
+          "not-the-token\nload res/square.ppm square save square testRes/daemon-rejected.ppm q\n"
+              .getBytes(StandardCharsets.UTF_8));
+      socket.shutdownOutput();
+      assertEquals("Rejected: send the daemon's token first.\n",
+          new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    StringBuilder output = new StringBuilder();
+    ScriptDaemonController.sendScript(new StringReader("load res/square.ppm square q"),
+        daemon.getPort(), tokenFile, output);
+    daemon.stop();
+    running.join();
+
+    assertEquals(false, saved.exists());
+    assertEquals(true, output.toString().endsWith("Success!\nBye!\n"));
+    assertEquals(true, log.toString().contains("Rejected a client from port "));
+    assertEquals(false, Files.exists(tokenFile));
+  }
+
+  /**
+   * Test that the HTTP service runs the named commands on a posted image, and turns away requests
+   * it cannot run.
+   */
+  @Test
+  public void testHttpService() throws Exception {
+    HttpProcessingController service =
+        new HttpProcessingController(0, new StringBuilder(), 1, 1, 10000);
+    Thread running = new Thread(() -> {
+      try {
+        service.startProcessor();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    running.start();
+
+    String url = "http://127.0.0.1:" + service.getPort() + "/process?input=ppm&output=ppm";
+    HttpURLConnection connection = post(url + "&commands=horizontal-flip;brighten+0");
+    assertEquals(200, connection.getResponseCode());
+    Files.copy(connection.getInputStream(), Paths.get("testRes/http.ppm"),
+        StandardCopyOption.REPLACE_EXISTING);
+    assertEquals(new BasicImage("res/square.ppm").pixels().toString(),
+        new HorizontalFlipCommand().execute(
+            new BasicImage("testRes/http.ppm")).pixels().toString());
+
+    assertEquals(400, post(url + "&commands=brighten").getResponseCode());
+    assertEquals(400, post(url + "&commands=not-a-command").getResponseCode());
+    assertEquals(404, post("http://127.0.0.1:" + service.getPort() + "/other").getResponseCode());
+    service.stop();
+    running.join();
+  }
+
+  /**
+   * Test that requests beyond the queue are answered with 503 and requests past the timeout with
+   * 504, including requests still waiting for a worker, and that timed out requests leave room for
+   * later ones.
+   */
+  @Test
+  public void testHttpServiceTimeouts() throws Exception {
+    HttpProcessingController service =
+        new HttpProcessingController(0, new StringBuilder(), 1, 2, 300);
+    Thread running = new Thread(() -> {
+      try {
+        service.startProcessor();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    running.start();
+
+    String url = "http://127.0.0.1:" + service.getPort() + "/process?input=";
+    assertEquals(Arrays.asList(503, 504, 504, 504),
+        postConcurrently(url + "png&commands=blur;blur;blur", "res/koala-vertical.png", 4));
+
+    // the timed out request that was running frees its worker at its next row
+    List<Integer> later = postConcurrently(url + "ppm&commands=horizontal-flip",
+        "res/square.ppm", 3);
+    for (int i = 0; i < 100 && later.contains(503); i++) {
+      Thread.sleep(50);
+      later = postConcurrently(url + "ppm&commands=horizontal-flip", "res/square.ppm", 3);
+    }
+    assertEquals(Arrays.asList(200, 200, 200), later);
+    service.stop();
+    running.join();
+  }
+
+  /**
+   * Posts the square image to a URL.
+   *
+   * @param url the URL to post to
+   * @return the connection, with the request sent
+   */
+  private static HttpURLConnection post(String url) throws IOException {
+    return post(url, "res/square.ppm");
+  }
+
+  /**
+   * Posts an image to a URL.
+   *
+   * @param url   the URL to post to
+   * @param image the filepath of the image to post
+   * @return the connection, with the request sent
+   */
+  private static HttpURLConnection post(String url, String image) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    Files.copy(Paths.get(image), connection.getOutputStream());
+    return connection;
+  }
+
+  /**
+   * Posts an image to a URL from several threads at once.
+   *
+   * @param url      the URL to post to
+   * @param image    the filepath of the image to post
+   * @param requests the number of requests to post
+   * @return the status of each response, in increasing order
+   */
+  private static List<Integer> postConcurrently(String url, String image, int requests)
+      throws Exception {
+    ExecutorService clients = Executors.newFixedThreadPool(requests);
+    try {
+      List<Future<Integer>> responses = new ArrayList<>();
+      for (int i = 0; i < requests; i++) {
+        responses.add(clients.submit(() -> post(url, image).getResponseCode()));
+      }
+      List<Integer> statuses = new ArrayList<>();
+      for (Future<Integer> response : responses) {
+        statuses.add(response.get());
+      }
+      Collections.sort(statuses);
+      return statuses;
+    } finally {
+      clients.shutdown();
+    }
+  }
+
+  /**
+   * Waits up to ten seconds for a controller running on another thread to transmit some text.
+   *
+   * @param output the controller's output
+   * @param text   the text to wait for
+   */
+  private static void waitForOutput(StringBuilder output, String text)
+      throws InterruptedException {
+    for (int i = 0; i < 200; i++) {
+      synchronized (output) {
+        if (output.indexOf(text) >= 0) {
+          return;
+        }
+      }
+      Thread.sleep(50);
+    }
+  }
+
   /**
    * Test that the load command in the controller startProcessor method produces the correct view
    * output.
@@ -252,7 +855,7 @@ public class TestController {
             "... From: BAD ...\n" +
             "... To: square ...\n" +
             " Invalid filepath, BAD, filepath must end in one of: " +
-            ".gif, .bmp, .wbmp, .jpg, .tif, .ppm, .jpeg, .tiff, .png.\n" +
+            ".gif, .bmp, .wbmp, .jpg, .tif, .ppm, .jpeg, .png, .tiff.\n" +
             "Bye!\n",
         this.mockOutput.toString());
   }
@@ -299,7 +902,7 @@ public class TestController {
             "... From: square ...\n" +
             "... To: res/square.bad ...\n" +
             " Unrecognized file suffix in filepath: res/square.bad. File path must " +
-            "end in one of: ppm, tif, jpg, tiff, bmp, gif, png, jpeg, wbmp.\n" +
+            "end in one of: ppm, bmp, gif, jpeg, jpg, png, tif, tiff, wbmp.\n" +
             "Bye!\n",
         this.mockOutput.toString());
   }
@@ -323,7 +926,7 @@ public class TestController {
             "... From: square ...\n" +
             "... To: bad ...\n" +
             " Unrecognized file suffix in filepath: bad. File path must end in" +
-            " one of: ppm, tif, jpg, tiff, bmp, gif, png, jpeg, wbmp.\n" +
+            " one of: ppm, bmp, gif, jpeg, jpg, png, tif, tiff, wbmp.\n" +
             "Bye!\n",
         this.mockOutput.toString());
   }
@@ -506,6 +1109,39 @@ public class TestController {
         this.mockOutput.toString());
   }
 
+  /**
+   * Test that the swing controller runs loads and commands in the background, and shows their
+   * results once they are done.
+   */
+  @Test
+  public void testSwingCommandsInBackground() throws Exception {
+    ImageProcessingModel model = new ConcurrentImageProcessingModel();
+    ImageProcessingSwingView view = new MockSwingView(model);
+    ExecutorService background = Executors.newSingleThreadExecutor();
+    SwingAppFeatures controller = new SwingController(model, view, background);
+    view.setFeatures(controller);
+
+    controller.loadImage("res/square.ppm", "image");
+    finishWork(background);
+    controller.processCommand("Flip Horizontally");
+    finishWork(background);
+    background.shutdown();
+
+    assertEquals(new BasicImage("res/square.ppm").pixels().toString(),
+        new HorizontalFlipCommand().execute(model.image("image")).pixels().toString());
+  }
+
+  /**
+   * Waits for the work given to a background executor, and for the results it shows on the event
+   * dispatch thread.
+   *
+   * @param background the executor
+   */
+  private static void finishWork(ExecutorService background) throws Exception {
+    background.submit(() -> { }).get();
+    SwingUtilities.invokeAndWait(() -> { });
+  }
+
   /**
    * Test that various features in the swing controller produces the correct view output.
    */
@@ -1,8 +1,18 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 
+import imageprocessing.model.BasicImage;
 import imageprocessing.model.BasicImageProcessingModel;
+import imageprocessing.model.CommandMonitor;
+import imageprocessing.model.ConcurrentImageProcessingModel;
+import imageprocessing.model.Image;
 
+import imageprocessing.model.Commands.BrightenComponent;
+import imageprocessing.model.Commands.Command;
+import imageprocessing.model.Commands.HorizontalFlipCommand;
 import imageprocessing.model.Commands.RedComponent;
 import imageprocessing.view.ImageProcessingView;
 import imageprocessing.view.TextScriptImageProcessingView;
@@ -10,7 +20,18 @@ import imageprocessing.view.TextScriptImageProcessingView;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.awt.Rectangle;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The {@code TestModel} to test the methods in BasePPMImageProcessingModel class. Version 2
@@ -53,6 +74,27 @@ public class TestModel {
 //    assertEquals(this.model.pixels("square").toString(),
 //        this.model.pixels("squareAfterLoadAndSave").toString());
 //  }
+
+  /**
+   * Test loading a subsampled image and a region of an image.
+   */
+  @Test
+  public void testLoadScaledAndRegion() {
+    this.model.loadImageFromFile("res/square.ppm", "squareScaled", 2, null);
+    assertEquals("[[255 0 0]]", this.model.image("squareScaled").pixels().toString());
+
+    this.model.loadImageFromFile("res/square.ppm", "squareRegion", 1, new Rectangle(1, 0, 1, 2));
+    assertEquals("[[255 128 0], [178 100 255]]",
+        this.model.image("squareRegion").pixels().toString());
+  }
+
+  /**
+   * Test loading a region outside of the image.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testLoadRegionOutsideImage() {
+    this.model.loadImageFromFile("res/square.ppm", "squareRegion", 1, new Rectangle(5, 5, 1, 1));
+  }
 //
   /**
    * Test redComponent method.
@@ -64,6 +106,312 @@ public class TestModel {
     assertEquals(this.model.image("squareExpected").pixels().toString(),
         this.model.image("squareComponent").pixels().toString());
   }
+
+  /**
+   * Test chaining a load and a command run asynchronously, and a command on a missing image
+   * failing asynchronously.
+   */
+  @Test
+  public void testAsyncLoadAndCommand() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Image result = this.model.loadImageFromFileAsync("res/square.ppm", "loaded", executor)
+          .thenCompose(loaded -> this.model.doCommandAsync(
+              new RedComponent(), "loaded", "red", executor))
+          .join();
+      this.model.loadImageFromFile("res/square-red-grayscale.ppm", "squareExpected");
+      assertEquals(this.model.image("squareExpected").pixels().toString(),
+          result.pixels().toString());
+      assertEquals(result, this.model.image("red"));
+
+      try {
+        this.model.doCommandAsync(new RedComponent(), "missing", "red", executor).get();
+        fail("a command on a missing image should fail");
+      } catch (ExecutionException e) {
+        assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Test that a model over its memory budget sets images aside and reads them back unchanged.
+   */
+  @Test
+  public void testMemoryBudget() {
+    BasicImageProcessingModel budgeted = new BasicImageProcessingModel(1,
+        new File(System.getProperty("java.io.tmpdir")));
+    budgeted.loadImageFromFile("res/square.ppm", "square");
+    budgeted.doCommand(new RedComponent(), "square", "red");
+    budgeted.loadImageFromFile("res/square.png", "png");
+    budgeted.doCommand(new BrightenComponent(20), "square", "bright");
+
+    assertEquals(this.model.image("square").pixels().toString(),
+        budgeted.image("square").pixels().toString());
+    this.model.loadImageFromFile("res/square-red-grayscale.ppm", "squareExpected");
+    assertEquals(this.model.image("squareExpected").pixels().toString(),
+        budgeted.image("red").pixels().toString());
+    this.model.doCommand(new BrightenComponent(20), "square", "bright");
+    assertEquals(this.model.image("bright").pixels().toString(),
+        budgeted.image("bright").pixels().toString());
+
+    // replacing an image set aside gives the name the new image
+    budgeted.doCommand(new RedComponent(), "red", "square");
+    assertEquals(budgeted.image("red").pixels().toString(),
+        budgeted.image("square").pixels().toString());
+  }
+
+  /**
+   * Test that images made by commands in a model over its memory budget come back unchanged,
+   * whether they were set aside or made again, even after the images they were made from are
+   * replaced.
+   */
+  @Test
+  public void testMemoryBudgetLineage() {
+    BasicImageProcessingModel budgeted = new BasicImageProcessingModel(1,
+        new File(System.getProperty("java.io.tmpdir")));
+    Command copy = image -> new BasicImage(image.pixels());
+    budgeted.loadImageFromFile("res/square.ppm", "square");
+    budgeted.doCommand(new RedComponent(), "square", "red");
+    budgeted.doCommand(copy, "red", "copy");
+    budgeted.doCommand(copy, "copy", "copyOfCopy");
+    budgeted.doCommand(new BrightenComponent(20), "square", "bright");
+
+    this.model.loadImageFromFile("res/square-red-grayscale.ppm", "squareExpected");
+    String expected = this.model.image("squareExpected").pixels().toString();
+    assertEquals(expected, budgeted.image("copyOfCopy").pixels().toString());
+
+    // the images made from a replaced image keep their pixels
+    budgeted.loadImageFromFile("res/square.png", "red");
+    budgeted.loadImageFromFile("res/square.png", "copy");
+    assertEquals(expected, budgeted.image("copyOfCopy").pixels().toString());
+    this.model.doCommand(new BrightenComponent(20), "square", "bright");
+    assertEquals(this.model.image("bright").pixels().toString(),
+        budgeted.image("bright").pixels().toString());
+
+    // an image made again is made without the monitor that followed its command
+    CommandMonitor monitor = new CommandMonitor();
+    budgeted.doCommand(monitor.watch(copy), "square", "watchedCopy");
+    monitor.cancel();
+    budgeted.doCommand(new BrightenComponent(20), "square", "bright");
+    assertEquals(this.model.image("square").pixels().toString(),
+        budgeted.image("watchedCopy").pixels().toString());
+  }
+
+  /**
+   * Test that images decoded from files are kept in the decoded image cache directory and read
+   * back by another model, and that a file that changed is decoded again.
+   */
+  @Test
+  public void testDecodedImageCache() throws IOException {
+    File directory = Files.createTempDirectory("decoded").toFile();
+    File file = new File(directory, "square.ppm");
+    Files.copy(new File("res/square.ppm").toPath(), file.toPath());
+    File cache = new File(directory, "cache");
+    this.model.cacheDecodedImagesIn(cache);
+    this.model.loadImageFromFile(file.getPath(), "cachedSquare");
+    assertEquals(1, cache.list().length);
+
+    BasicImageProcessingModel later = new BasicImageProcessingModel();
+    later.cacheDecodedImagesIn(cache);
+    later.loadImageFromFile(file.getPath(), "cachedSquare");
+    assertEquals(this.model.image("square").pixels().toString(),
+        later.image("cachedSquare").pixels().toString());
+
+    Files.copy(new File("res/square-red-grayscale.ppm").toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    later.loadImageFromFile(file.getPath(), "changedSquare");
+    this.model.loadImageFromFile("res/square-red-grayscale.ppm", "squareExpected");
+    assertEquals(this.model.image("squareExpected").pixels().toString(),
+        later.image("changedSquare").pixels().toString());
+  }
+
+  /**
+   * Test that models only share the images they decode when asked to, and that a model with a
+   * memory budget never does.
+   */
+  @Test
+  public void testShareDecodedImages() throws IOException {
+    File directory = Files.createTempDirectory("shared").toFile();
+    File file = new File(directory, "square.ppm");
+    Files.copy(new File("res/square.ppm").toPath(), file.toPath());
+
+    BasicImageProcessingModel first = new BasicImageProcessingModel();
+    BasicImageProcessingModel second = new BasicImageProcessingModel();
+    first.loadImageFromFile(file.getPath(), "square");
+    second.loadImageFromFile(file.getPath(), "square");
+    assertNotSame(first.image("square"), second.image("square"));
+
+    BasicImageProcessingModel sharing = new BasicImageProcessingModel();
+    BasicImageProcessingModel alsoSharing = new BasicImageProcessingModel();
+    BasicImageProcessingModel budgeted = new BasicImageProcessingModel(1 << 20, directory);
+    sharing.shareDecodedImages(true);
+    alsoSharing.shareDecodedImages(true);
+    budgeted.shareDecodedImages(true);
+    sharing.loadImageFromFile(file.getPath(), "square");
+    alsoSharing.loadImageFromFile(file.getPath(), "square");
+    budgeted.loadImageFromFile(file.getPath(), "square");
+    assertSame(sharing.image("square"), alsoSharing.image("square"));
+    assertNotSame(sharing.image("square"), budgeted.image("square"));
+  }
+
+  /**
+   * Test that names given images with the same pixels, loaded or made, share one image.
+   */
+  @Test
+  public void testContentDeduplication() {
+    this.model.loadImageFromFile("res/square.ppm", "sameSquare");
+    assertSame(this.model.image("square"), this.model.image("sameSquare"));
+
+    this.model.doCommand(new HorizontalFlipCommand(), "square", "flipped");
+    assertNotSame(this.model.image("square"), this.model.image("flipped"));
+    this.model.doCommand(new HorizontalFlipCommand(), "flipped", "flippedBack");
+    assertSame(this.model.image("square"), this.model.image("flippedBack"));
+  }
+
+  /**
+   * Test that running a command again on an image with the same pixels gives back the image it
+   * made before, and that other parameters or commands still run.
+   */
+  @Test
+  public void testCommandResultCache() {
+    ConcurrentImageProcessingModel cached = new ConcurrentImageProcessingModel(1 << 20);
+    cached.loadImageFromFile("res/square.ppm", "square");
+    cached.loadImageFromFile("res/square.ppm", "sameSquare");
+    cached.doCommand(new BrightenComponent(20), "square", "bright");
+    // the result is found, so the followed command never starts
+    CommandMonitor monitor = new CommandMonitor();
+    cached.doCommand(monitor.watch(new BrightenComponent(20)), "sameSquare", "sameBright");
+    assertEquals(0, monitor.rows());
+    assertSame(cached.image("bright"), cached.image("sameBright"));
+
+    // other parameters run, and lambdas always run
+    monitor = new CommandMonitor();
+    cached.doCommand(monitor.watch(new BrightenComponent(30)), "square", "brighter");
+    assertEquals(2, monitor.rows());
+    int[] runs = new int[1];
+    Command lambda = image -> {
+      runs[0]++;
+      return new BrightenComponent(20).execute(image);
+    };
+    cached.doCommand(lambda, "square", "lambda");
+    cached.doCommand(lambda, "square", "lambda");
+    assertEquals(2, runs[0]);
+
+    this.model.doCommand(new BrightenComponent(30), "square", "brighter");
+    assertEquals(this.model.image("brighter").pixels().toString(),
+        cached.image("brighter").pixels().toString());
+  }
+
+  /**
+   * Test that a monitor counts the rows a command reaches, and that a cancelled command stops
+   * without giving its destination a result.
+   */
+  @Test
+  public void testCommandMonitor() {
+    CommandMonitor monitor = new CommandMonitor();
+    this.model.doCommand(monitor.watch(new RedComponent()), "square", "squareComponent");
+    assertEquals(2, monitor.rows());
+    assertEquals(2, monitor.rowsDone());
+    this.model.loadImageFromFile("res/square-red-grayscale.ppm", "squareExpected");
+    assertEquals(this.model.image("squareExpected").pixels().toString(),
+        this.model.image("squareComponent").pixels().toString());
+
+    CommandMonitor cancelled = new CommandMonitor();
+    cancelled.cancel();
+    try {
+      this.model.doCommand(cancelled.watch(new RedComponent()), "square", "cancelled");
+      fail("a cancelled command should stop");
+    } catch (CancellationException e) {
+      assertEquals(0, cancelled.rowsDone());
+    }
+    try {
+      this.model.image("cancelled");
+      fail("a cancelled command should not give a result");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a progress listener is told when a command starts and as it reaches its rows.
+   */
+  @Test
+  public void testProgressListener() {
+    List<String> progress = new ArrayList<>();
+    this.model.doCommand(CommandMonitor.monitored(new RedComponent(), 0,
+        (rowsDone, rows, remainingMillis) -> progress.add(rowsDone + " of " + rows)),
+        "square", "squareComponent");
+    assertEquals(Arrays.asList("0 of 2", "1 of 2", "2 of 2"), progress);
+  }
+
+  /**
+   * Test that a command running past its deadline stops without giving its destination a result,
+   * and that each run of a command with a timeout gets its own deadline.
+   */
+  @Test
+  public void testCommandDeadline() {
+    Command slow = image -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new RedComponent().execute(image);
+    };
+    try {
+      this.model.doCommand(CommandMonitor.withTimeout(slow, 10), "square", "late");
+      fail("a command past its deadline should stop");
+    } catch (CancellationException e) {
+      assertEquals("Stopped after running longer than 10 ms.", e.getMessage());
+    }
+    try {
+      this.model.image("late");
+      fail("a stopped command should not give a result");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    Command limited = CommandMonitor.withTimeout(new RedComponent(), 10000);
+    this.model.doCommand(limited, "square", "first");
+    this.model.doCommand(limited, "first", "second");
+    assertEquals(this.model.image("first").pixels().toString(),
+        this.model.image("second").pixels().toString());
+  }
+
+  /**
+   * Test that threads sharing a concurrent model each see their commands on the same image applied
+   * in turn, while working on other images at the same time.
+   */
+  @Test
+  public void testConcurrentModelSharedByThreads() throws InterruptedException {
+    ConcurrentImageProcessingModel shared = new ConcurrentImageProcessingModel();
+    shared.loadImageFromFile("res/square.ppm", "square");
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      String name = "red" + t;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10; i++) {
+          shared.doCommand(new BrightenComponent(1), "square", "square");
+          shared.doCommand(new RedComponent(), "square", name);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (int i = 0; i < 40; i++) {
+      this.model.doCommand(new BrightenComponent(1), "square", "square");
+    }
+    assertEquals(this.model.image("square").pixels().toString(),
+        shared.image("square").pixels().toString());
+    for (int t = 0; t < threads.length; t++) {
+      assertEquals(2, shared.image("red" + t).pixels().size());
+    }
+  }
 //
 //  /**
 //   * Test blueComponent method.
@@ -1,17 +1,24 @@
 import imageprocessing.model.BasicImage;
 import imageprocessing.model.Image;
+import imageprocessing.model.ProgressListener;
 import imageprocessing.view.ImageProcessingView;
+import imageprocessing.view.SaveOptions;
 import imageprocessing.view.TextScriptImageProcessingView;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import imageprocessing.model.BasicImageProcessingModel;
 import imageprocessing.model.ImageProcessingModel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * The {@code TestView} to test the methods in TestView class. Version 2 changes: added tests for
@@ -118,6 +125,29 @@ public class TestView {
     assertEquals("This is a message.", this.output.toString());
   }
 
+  /**
+   * To test that progress is rendered only for commands running longer than the interval, at most
+   * once per interval, with a last line for commands that were reported on.
+   */
+  @Test
+  public void testProgressListener() throws InterruptedException {
+    TextScriptImageProcessingView textView =
+        new TextScriptImageProcessingView(this.output, this.model);
+    ProgressListener quick = textView.progressListener(60000);
+    quick.progressed(0, 10, -1);
+    quick.progressed(5, 10, 100);
+    quick.progressed(10, 10, 0);
+    assertEquals("", this.output.toString());
+
+    ProgressListener slow = textView.progressListener(1);
+    slow.progressed(0, 10, -1);
+    Thread.sleep(5);
+    slow.progressed(4, 10, 1500);
+    slow.progressed(10, 10, 0);
+    assertEquals("... Progress: 40% of 10 rows, about 2 s left ...\n"
+        + "... Progress: 100% of 10 rows ...\n", this.output.toString());
+  }
+
   /**
    * To test save.
    */
@@ -130,6 +160,115 @@ public class TestView {
     assertEquals(this.model.image("square").pixels().toString(),
         this.model.image("squareAfterLoadAndSave").pixels().toString());
   }
+
+  /**
+   * To test that images streamed one strip of rows at a time, forced by a stream threshold of 0,
+   * load back with the same pixels as PPM, BMP and PNG, both for an image with padded BMP rows and
+   * for one spanning many strips.
+   */
+  @Test
+  public void testSaveAndLoadStreamedStrips() throws IOException {
+    this.view = new TextScriptImageProcessingView(this.output, this.model,
+        new SaveOptions(false, SaveOptions.DEFAULT_PNG_COMPRESSION_LEVEL,
+            SaveOptions.DEFAULT_JPEG_QUALITY, 0));
+    this.model.loadImageFromFile("res/square.png", "square");
+    this.model.loadImageFromFile("res/koala-vertical.png", "koala");
+
+    for (String name : new String[]{"square", "koala"}) {
+      for (String suffix : new String[]{"ppm", "bmp", "png"}) {
+        String filepath = "testRes/" + name + "-streamed." + suffix;
+        this.view.saveImageToFile(this.model.image(name), filepath);
+        this.model.loadImageFromFile(filepath, name + "Streamed" + suffix);
+        assertEquals(filepath, this.model.image(name).pixels().toString(),
+            this.model.image(name + "Streamed" + suffix).pixels().toString());
+      }
+    }
+  }
+
+  /**
+   * To test save with the parallel PNG encoder.
+   */
+  @Test
+  public void testSaveAndLoadParallelPNG() throws IOException {
+    this.view = new TextScriptImageProcessingView(this.output, this.model, new SaveOptions(true));
+    this.model.loadImageFromFile("testRes/Koala.jpg", "koala");
+    this.view.saveImageToFile(this.model.image("koala"), "testRes/koala-parallel.png");
+    this.model.loadImageFromFile("testRes/koala-parallel.png", "koalaAfterLoadAndSave");
+
+    assertEquals(this.model.image("koala").pixels().toString(),
+        this.model.image("koalaAfterLoadAndSave").pixels().toString());
+  }
+
+  /**
+   * To test that saves and loads in a row, which reuse pooled ImageIO writers and readers, give
+   * back the same pixels, and that a pooled reader is not used for a file whose content does not
+   * match its suffix.
+   */
+  @Test
+  public void testPooledSavesAndLoads() throws IOException {
+    this.view = new TextScriptImageProcessingView(this.output, this.model, new SaveOptions(false));
+    this.model.loadImageFromFile("res/square.png", "square");
+    for (int i = 0; i < 3; i++) {
+      this.view.saveImageToFile(this.model.image("square"), "testRes/square-pooled" + i + ".png");
+      this.model.loadImageFromFile("testRes/square-pooled" + i + ".png", "squarePooled" + i);
+      assertEquals(this.model.image("square").pixels().toString(),
+          this.model.image("squarePooled" + i).pixels().toString());
+    }
+
+    this.model.loadImageFromFile("res/square-blur.jpeg", "jpeg");
+    Files.copy(new File("res/square.png").toPath(), new File("testRes/square-png.jpeg").toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    this.model.loadImageFromFile("testRes/square-png.jpeg", "pngNamedJpeg");
+    assertEquals(this.model.image("square").pixels().toString(),
+        this.model.image("pngNamedJpeg").pixels().toString());
+  }
+
+  /**
+   * To test that a lower JPEG quality makes a smaller file, and that a higher PNG compression level
+   * makes a smaller file with the same pixels.
+   */
+  @Test
+  public void testSaveJPEGQualityAndPNGLevel() throws IOException {
+    this.model.loadImageFromFile("testRes/Koala.jpg", "koala");
+    Image koala = this.model.image("koala");
+
+    new TextScriptImageProcessingView(this.output, this.model, new SaveOptions(false, -1, 0.1f))
+        .saveImageToFile(koala, "testRes/koala-low.jpg");
+    new TextScriptImageProcessingView(this.output, this.model, new SaveOptions(false, -1, 1f))
+        .saveImageToFile(koala, "testRes/koala-high.jpg");
+    assertTrue(new File("testRes/koala-low.jpg").length()
+        < new File("testRes/koala-high.jpg").length());
+
+    new TextScriptImageProcessingView(this.output, this.model,
+        new SaveOptions(false, 0, SaveOptions.DEFAULT_JPEG_QUALITY))
+        .saveImageToFile(koala, "testRes/koala-level0.png");
+    new TextScriptImageProcessingView(this.output, this.model,
+        new SaveOptions(false, 9, SaveOptions.DEFAULT_JPEG_QUALITY))
+        .saveImageToFile(koala, "testRes/koala-level9.png");
+    assertTrue(new File("testRes/koala-level9.png").length()
+        < new File("testRes/koala-level0.png").length());
+    this.model.loadImageFromFile("testRes/koala-level9.png", "koalaLevel9");
+    assertEquals(koala.pixels().toString(),
+        this.model.image("koalaLevel9").pixels().toString());
+  }
+
+  /**
+   * To test that saving an image in a format whose writer cannot encode it, such as a color image
+   * as WBMP, fails as it did before writers were pooled and leaves no file behind.
+   */
+  @Test
+  public void testSaveUnencodableFormat() throws IOException {
+    this.model.loadImageFromFile("res/square.png", "square");
+    File wbmp = new File("testRes/square.wbmp");
+    wbmp.delete();
+    try {
+      this.view.saveImageToFile(this.model.image("square"), wbmp.getPath());
+      fail("A color image cannot be saved as WBMP.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Filepath must end in .ppm", e.getMessage());
+    }
+    assertEquals(false, wbmp.exists());
+  }
 //
 //  /**
 //   * To test save to bad path.